@@ -0,0 +1,66 @@
+package com.hugovs.gls.receiver.api;
+
+import com.google.gson.Gson;
+import com.hugovs.gls.receiver.api.model.Frequency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the serialization of a frequency frame in each {@link Encoding}, as done by
+ * {@link GunshotAPI#sendFrequencies(long, long, double[])} once per encoding in use.
+ *
+ * @author Hugo Sartori
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrequencySerializationBenchmark {
+
+    @Param({"64", "128"})
+    public int bins;
+
+    private final Gson gson = new Gson();
+    private final FrequencyEncoder encoder = new FrequencyEncoder();
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        values = new double[bins];
+        for (int i = 0; i < bins; i++)
+            values[i] = Math.abs(random.nextGaussian()) * 10;
+    }
+
+    @Benchmark
+    public String json() {
+        final GunshotAPI.Message message = new GunshotAPI.Message("topic/device.frequency",
+                gson.toJson(new Frequency(1, 1000, values)));
+        return gson.toJson(message);
+    }
+
+    @Benchmark
+    public byte[] float32() {
+        return encoder.encode(Encoding.FLOAT32, 1, 1000, values);
+    }
+
+    @Benchmark
+    public byte[] uint16() {
+        return encoder.encode(Encoding.UINT16, 1, 1000, values);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioServer;
+import com.hugovs.gls.receiver.classifier.DecisionTree;
+import com.hugovs.gls.receiver.dsp.MfccExtractor;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.PropertyKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the gunshot classification of the impulsive windows of a packet, and the MFCC extraction and decision
+ * of a single window.
+ *
+ * The MFCC filters only fit the spectrum of the sub-band up to about 32 kHz, so higher sample rates are not measured.
+ *
+ * @author Hugo Sartori
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GunshotDetectorBenchmark {
+
+    @Param({"16000", "22050", "32000"})
+    public int sampleRate;
+
+    @Param({"1280", "6400", "12800"})
+    public int bufferSize;
+
+    @Param({Signals.SYNTHETIC})
+    public String signal;
+
+    private GunshotDetector detector;
+    private AudioData[] packets;
+    private int next;
+
+    // Single window
+    private MfccExtractor extractor;
+    private DecisionTree tree;
+    private double[] window;
+    private double[] features;
+
+    @Setup
+    public void setup() throws IOException {
+        final SampleDecoder decoder = new SampleDecoder();
+        final ImpulsiveSoundDetector impulsiveDetector = new ImpulsiveSoundDetector();
+        detector = new GunshotDetector();
+        final AudioServer server = new AudioServer(sampleRate, 16);
+        server.addExtension(decoder);
+        server.addExtension(impulsiveDetector);
+        server.addExtension(detector);
+        decoder.onServerStart();
+        impulsiveDetector.onServerStart();
+        detector.onServerStart();
+
+        // The impulsive detector reuses its windows, so each packet keeps a copy of its own
+        packets = Signals.packets(signal, sampleRate, bufferSize);
+        for (final AudioData data : packets) {
+            decoder.onDataReceived(data);
+            impulsiveDetector.onDataReceived(data);
+            final List<double[]> windows = new ArrayList<>();
+            for (final double[] subBand : AudioProperties.of(data).get(PropertyKey.ALAN))
+                windows.add(subBand.clone());
+            AudioProperties.of(data).put(PropertyKey.ALAN, windows);
+            if (window == null && !windows.isEmpty()) window = windows.get(0);
+        }
+        if (window == null) throw new IllegalStateException("The " + signal + " signal has no impulsive window");
+
+        extractor = new MfccExtractor(sampleRate, window.length, 130, 6800, 4, 22);
+        tree = DecisionTree.loadResource(GunshotDetector.DEFAULT_MODEL);
+        features = new double[extractor.getCepstrumSize()];
+    }
+
+    @Benchmark
+    public AudioData packet() {
+        final AudioData data = packets[next];
+        next = (next + 1) % packets.length;
+        detector.onDataReceived(data);
+        return data;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int window() {
+        extractor.extract(window, features);
+        return tree.classify(features);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioServer;
+import com.hugovs.gls.receiver.dsp.FastFourierTransform;
+import com.hugovs.gls.receiver.util.MathUtils;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the decoding and impulsive window extraction of a packet, and the analysis of a single window.
+ *
+ * @author Hugo Sartori
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImpulsiveSoundDetectorBenchmark {
+
+    @Param({"16000", "44100", "128000"})
+    public int sampleRate;
+
+    @Param({"1280", "6400", "12800"})
+    public int bufferSize;
+
+    @Param({"0", "33"})
+    public int hopSize;
+
+    @Param({Signals.SYNTHETIC})
+    public String signal;
+
+    private final SampleDecoder decoder = new SampleDecoder();
+    private ImpulsiveSoundDetector detector;
+    private AudioData[] packets;
+    private int next;
+
+    // Single window
+    private FastFourierTransform fft;
+    private double[] window, re, im, magnitudes;
+
+    @Setup
+    public void setup() throws IOException {
+        detector = new ImpulsiveSoundDetector(hopSize);
+        final AudioServer server = new AudioServer(sampleRate, 16);
+        server.addExtension(decoder);
+        server.addExtension(detector);
+        decoder.onServerStart();
+        detector.onServerStart();
+        packets = Signals.packets(signal, sampleRate, bufferSize);
+
+        fft = new FastFourierTransform(128, DftNormalization.UNITARY);
+        window = new double[99];
+        re = new double[128];
+        im = new double[128];
+        magnitudes = new double[128];
+        decoder.onDataReceived(packets[0]);
+        final double[] samples = SampleDecoder.samplesOf(packets[0]).getSamples();
+        for (int i = 0; i < window.length; i++)
+            window[i] = samples[i] * ImpulsiveSoundDetector.SAMPLE_SCALE;
+    }
+
+    @Benchmark
+    public AudioData packet() {
+        final AudioData data = packets[next];
+        next = (next + 1) % packets.length;
+        decoder.onDataReceived(data);
+        detector.onDataReceived(data);
+        return data;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean window() {
+        fft.forward(window, window.length, re, im);
+        MathUtils.abs(re, im, 0, fft.getSize(), magnitudes);
+        final double expectation = MathUtils.expectation(magnitudes, ImpulsiveSoundDetector.SUB_START, ImpulsiveSoundDetector.SUB_END);
+        final double variance = MathUtils.variance(magnitudes, ImpulsiveSoundDetector.SUB_START, ImpulsiveSoundDetector.SUB_END);
+        return expectation > ImpulsiveSoundDetector.EXPECTATION_THRESHOLD && variance > ImpulsiveSoundDetector.VARIANCE_THRESHOLD;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.receiver.input.AudioPackets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Packets of 16-bit little-endian PCM for the benchmarks.
+ *
+ * The synthetic signal is low background noise with a decaying burst every quarter of a second, so a share of the
+ * windows is impulsive. The recorded signal is read from the raw PCM file in the {@value #PCM_PROPERTY} system
+ * property, for example {@code -jvmArgs -Dgls.benchmark.pcm=shots.raw -p signal=recorded}.
+ *
+ * @author Hugo Sartori
+ */
+final class Signals {
+
+    static final String SYNTHETIC = "synthetic";
+    static final String RECORDED = "recorded";
+    static final String PCM_PROPERTY = "gls.benchmark.pcm";
+    static final int PACKETS = 64;
+
+    private Signals() {
+        //no instance
+    }
+
+    /**
+     * Create consecutive packets of a signal.
+     *
+     * @param signal:     {@link #SYNTHETIC} or {@link #RECORDED}.
+     * @param sampleRate: the sample rate of the signal.
+     * @param bufferSize: the size in bytes of the samples of each packet.
+     * @return the packets.
+     */
+    static AudioData[] packets(String signal, int sampleRate, int bufferSize) throws IOException {
+        final int samplesPerPacket = bufferSize / 2;
+        final short[] pcm = samples(signal, sampleRate, samplesPerPacket * PACKETS);
+
+        final AudioData[] packets = new AudioData[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            final ByteBuffer buffer = ByteBuffer.allocate(AudioPackets.HEADER_SIZE + bufferSize);
+            AudioPackets.writeHeader(buffer, 1, i * 1000L * samplesPerPacket / sampleRate);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int j = 0; j < samplesPerPacket; j++)
+                buffer.putShort(pcm[(i * samplesPerPacket + j) % pcm.length]);
+            packets[i] = AudioData.wrap(buffer.array());
+        }
+        return packets;
+    }
+
+    private static short[] samples(String signal, int sampleRate, int length) throws IOException {
+        switch (signal) {
+            case SYNTHETIC: return synthetic(sampleRate, length);
+            case RECORDED: return recorded();
+            default: throw new IllegalArgumentException("Unknown signal: " + signal);
+        }
+    }
+
+    private static short[] synthetic(int sampleRate, int length) {
+        final Random random = new Random(42);
+        final int period = sampleRate / 4;
+        final double decay = 1.0 / (0.02 * sampleRate);
+        final short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            final double burst = 0.9 * Math.exp(-(i % period) * decay);
+            final double value = (0.02 + burst) * random.nextGaussian();
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value * Short.MAX_VALUE));
+        }
+        return samples;
+    }
+
+    private static short[] recorded() throws IOException {
+        final String path = System.getProperty(PCM_PROPERTY);
+        if (path == null) throw new IllegalStateException("Set -D" + PCM_PROPERTY + " to a raw 16-bit little-endian PCM file");
+        final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))).order(ByteOrder.LITTLE_ENDIAN);
+        final short[] samples = new short[bytes.remaining() / 2];
+        bytes.asShortBuffer().get(samples);
+        if (samples.length == 0) throw new IllegalStateException("The PCM file " + path + " is empty");
+        return samples;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.hugovs.gls.receiver.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the statistics of the impulsive detection over spectra of the sub-band and full window sizes.
+ *
+ * @author Hugo Sartori
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathUtilsBenchmark {
+
+    @Param({"20", "128"})
+    public int size;
+
+    private double[] numbers;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        numbers = new double[size];
+        for (int i = 0; i < size; i++)
+            numbers[i] = Math.abs(random.nextGaussian());
+    }
+
+    @Benchmark
+    public double mean() {
+        return MathUtils.mean(numbers);
+    }
+
+    @Benchmark
+    public double variance() {
+        return MathUtils.variance(numbers);
+    }
+
+    @Benchmark
+    public double expectation() {
+        return MathUtils.expectation(numbers);
+    }
+
+}
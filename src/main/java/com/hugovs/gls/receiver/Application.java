@@ -1,5 +1,6 @@
 package com.hugovs.gls.receiver;
 
+import com.hugovs.gls.core.AudioInput;
 import com.hugovs.gls.core.AudioServer;
 import com.hugovs.gls.core.AudioServerExtension;
 import com.hugovs.gls.core.util.StringUtils;
@@ -7,7 +8,16 @@ import com.hugovs.gls.receiver.api.GunshotAPIManager;
 import com.hugovs.gls.receiver.extensions.GunshotDetector;
 import com.hugovs.gls.receiver.extensions.GunshotSender;
 import com.hugovs.gls.receiver.extensions.ImpulsiveSoundDetector;
+import com.hugovs.gls.receiver.extensions.MetricsCollector;
+import com.hugovs.gls.receiver.extensions.SampleDecoder;
+import com.hugovs.gls.receiver.extensions.ShardedPipeline;
+import com.hugovs.gls.receiver.extensions.SpectrogramRecorder;
+import com.hugovs.gls.receiver.extensions.StageTimer;
 import com.hugovs.gls.receiver.extensions.WaveDrawer;
+import com.hugovs.gls.receiver.input.ChannelAudioInput;
+import com.hugovs.gls.receiver.input.FileReplayInput;
+import com.hugovs.gls.receiver.input.JitterBufferInput;
+import com.hugovs.gls.receiver.input.TimedAudioInput;
 import com.hugovs.gls.receiver.input.UdpAudioInput;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
@@ -18,7 +28,11 @@ import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Application {
@@ -35,27 +49,117 @@ public class Application {
         int sampleSize = ns.getInt("sample_size");
         int bufferSize = ns.getInt("buffer_size");
         int port = ns.getInt("port");
+        String input = ns.getString("input");
+        int poolSize = ns.getInt("pool_size");
+        int receiveBufferSize = ns.getInt("receive_buffer");
+        boolean batch = ns.getBoolean("batch");
+        String replayFile = ns.getString("replay_file");
+        int replayDevices = ns.getInt("replay_devices");
+        double replaySpeed = ns.getDouble("replay_speed");
+        boolean replayLoop = ns.getBoolean("replay_loop");
+        int jitterDelay = ns.getInt("jitter_delay");
+        int jitterDepth = ns.getInt("jitter_depth");
+        int shards = ns.getInt("shards");
+        int hopSize = ns.getInt("hop_size");
+        String model = ns.getString("model");
+        boolean spectrogram = ns.getBoolean("spectrogram");
+        Path modelPath = model != null ? Paths.get(model) : null;
 
         log.info("Connection properties:");
         log.info("  - Port: " + port);
+        log.info("  - Input: " + input);
+        log.info("  - Pool size: " + poolSize);
+        log.info("  - Receive buffer: " + (receiveBufferSize > 0 ? receiveBufferSize : "default"));
+        log.info("  - Batch: " + batch);
+        if (input.equals("file"))
+            log.info("  - Replay: " + replayFile + ", " + replayDevices + " devices, " + (replaySpeed > 0 ? replaySpeed + "x" : "maximum speed") + (replayLoop ? ", looping" : ""));
+        log.info("  - Jitter buffer: " + (jitterDelay > 0 ? jitterDepth + " packets, " + jitterDelay + " ms" : "none"));
         log.info("Sound properties:");
         log.info("  - Sample rate: " + sampleRate);
         log.info("  - Sample size: " + sampleSize);
         log.info("  - Buffer size: " + bufferSize);
+        log.info("Processing properties:");
+        log.info("  - Shards: " + shards);
+        log.info("  - Hop size: " + (hopSize > 0 ? hopSize : "none"));
+        log.info("  - Model: " + (modelPath != null ? modelPath : GunshotDetector.DEFAULT_MODEL));
+        log.info("  - Spectrogram: " + spectrogram);
 
         List<AudioServerExtension> extensions = new ArrayList<>();
+        if (spectrogram) extensions.add(new SpectrogramRecorder());
         log.info("Extensions: " + StringUtils.join(extensions));
 
         AudioServer audioServer = new AudioServer(sampleRate, sampleSize);
-        audioServer.setInput(new UdpAudioInput(55555, bufferSize));
-        audioServer.addExtension(new ImpulsiveSoundDetector());
-        audioServer.addExtension(new GunshotDetector());
-        audioServer.addExtension(new WaveDrawer());
-        audioServer.addExtension(new GunshotSender());
-        audioServer.addExtension(extensions);
+        AudioInput audioInput;
+        // The jitter buffer releases the waiting packets after each receive timeout while no packet arrives
+        int receiveTimeout = jitterDelay;
+        switch (input) {
+            case "socket":
+                audioInput = new UdpAudioInput(port, bufferSize, receiveBufferSize, receiveTimeout);
+                break;
+            case "file":
+                if (replayFile == null) {
+                    log.error("The file input requires --replay-file");
+                    System.exit(-1);
+                }
+                try {
+                    audioInput = new FileReplayInput(Paths.get(replayFile), sampleRate, sampleSize, bufferSize,
+                            replayDevices, 1, replaySpeed, replayLoop, poolSize);
+                } catch (IOException e) {
+                    log.error("Failed to open the replay file " + replayFile, e);
+                    System.exit(-1);
+                    return;
+                }
+                break;
+            default:
+                audioInput = new ChannelAudioInput(port, bufferSize, poolSize, receiveBufferSize, batch, receiveTimeout);
+        }
+        if (jitterDelay > 0) {
+            final int jitterDevices = Math.max(JitterBufferInput.DEFAULT_MAX_DEVICES, input.equals("file") ? replayDevices : 0);
+            audioInput = new JitterBufferInput(audioInput, sampleRate, sampleSize, bufferSize, jitterDepth, jitterDelay,
+                    poolSize, jitterDevices);
+        }
+        audioServer.setInput(new TimedAudioInput(audioInput));
+        final WaveDrawer waveDrawer = new WaveDrawer();
+        final GunshotSender gunshotSender = new GunshotSender();
+        if (shards > 1) {
+            // Half of the pool is left to the input, for a batch or the packets released at once by the jitter buffer
+            final int queueSize = ShardedPipeline.queueSizeFor(poolSize / 2, shards);
+            log.info("Shard queue size: " + queueSize);
+            audioServer.addExtension(new ShardedPipeline(shards, queueSize, () -> {
+                final List<AudioServerExtension> chain = new ArrayList<>(Arrays.asList(
+                        new SampleDecoder(), new ImpulsiveSoundDetector(hopSize), new GunshotDetector(modelPath),
+                        waveDrawer, gunshotSender));
+                chain.addAll(extensions);
+                final List<AudioServerExtension> timed = timed(chain);
+                timed.add(0, new StageTimer("queue"));
+                return timed;
+            }));
+        } else {
+            final List<AudioServerExtension> chain = new ArrayList<>(Arrays.asList(
+                    new SampleDecoder(), new ImpulsiveSoundDetector(hopSize), new GunshotDetector(modelPath),
+                    waveDrawer, gunshotSender));
+            chain.addAll(extensions);
+            audioServer.addExtension(timed(chain));
+        }
         audioServer.start();
     }
 
+    /**
+     * Time each extension of a chain in its own stage, and collect the metrics at the end of the chain.
+     *
+     * @param chain: the extensions, in order.
+     * @return the extensions with a {@link StageTimer} after each one and a {@link MetricsCollector} at the end.
+     */
+    private static List<AudioServerExtension> timed(List<AudioServerExtension> chain) {
+        final List<AudioServerExtension> timed = new ArrayList<>(chain.size() * 2 + 1);
+        for (final AudioServerExtension extension : chain) {
+            timed.add(extension);
+            timed.add(new StageTimer(extension.getClass().getSimpleName()));
+        }
+        timed.add(new MetricsCollector());
+        return timed;
+    }
+
     private static Namespace parseArguments(String[] args) {
         // Register arguments
         ArgumentParser parser = ArgumentParsers.newFor("GLS Receiver").build()
@@ -70,6 +174,58 @@ public class Application {
                 .choices(new RangeArgumentChoice<>(0, 65535))
                 .setDefault(55555)
                 .help("Specify the port to listen to packets");
+        connectionGroup.addArgument("-i", "--input")
+                .metavar("input")
+                .choices("channel", "socket", "file")
+                .setDefault("channel")
+                .help("Specify the input implementation: pooled buffers over a DatagramChannel, a plain DatagramSocket or the replay of a file");
+        connectionGroup.addArgument("--pool-size")
+                .metavar("poolSize")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(1, 4096))
+                .setDefault(ChannelAudioInput.DEFAULT_POOL_SIZE)
+                .help("Specify the amount of pooled packet buffers of the input; the shard queues are sized to fit in half of it");
+        connectionGroup.addArgument("--receive-buffer")
+                .metavar("receiveBuffer")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(0, 256 * 1024 * 1024))
+                .setDefault(0)
+                .help("Specify the socket receive buffer size (SO_RCVBUF) in bytes, 0 keeps the system default");
+        connectionGroup.addArgument("--batch")
+                .metavar("batch")
+                .action(Arguments.storeTrue())
+                .help("Drain every queued datagram on each wakeup of the channel input");
+        connectionGroup.addArgument("--replay-file")
+                .metavar("replayFile")
+                .help("Specify the WAV or raw PCM file replayed by the file input");
+        connectionGroup.addArgument("--replay-devices")
+                .metavar("replayDevices")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(1, 100000))
+                .setDefault(1)
+                .help("Specify the amount of devices simulated by the file input");
+        connectionGroup.addArgument("--replay-speed")
+                .metavar("replaySpeed")
+                .type(Double.class)
+                .choices(new RangeArgumentChoice<>(0.0, 1000.0))
+                .setDefault(1.0)
+                .help("Specify the replay speed of the file input relative to real time; 0 replays as fast as possible");
+        connectionGroup.addArgument("--replay-loop")
+                .metavar("replayLoop")
+                .action(Arguments.storeTrue())
+                .help("Replay the file again after its end");
+        connectionGroup.addArgument("--jitter-delay")
+                .metavar("jitterDelay")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(0, 10000))
+                .setDefault(0)
+                .help("Specify the milliseconds a packet waits for the missing packets of its device before these are filled with silence; 0 disables the jitter buffer");
+        connectionGroup.addArgument("--jitter-depth")
+                .metavar("jitterDepth")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(1, 256))
+                .setDefault(JitterBufferInput.DEFAULT_DEPTH)
+                .help("Specify the amount of packets of each device the jitter buffer can reorder");
 
         // Sound arguments
         ArgumentGroup soundGroup = parser.addArgumentGroup("Sound").description("Specify some sound properties");
@@ -92,12 +248,34 @@ public class Application {
                 .setDefault(1280)
                 .help("Specify the buffer size");
 
+        // Processing arguments
+        ArgumentGroup processingGroup = parser.addArgumentGroup("Processing").description("Specify how the data is processed");
+        processingGroup.addArgument("--shards")
+                .metavar("shards")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(1, 256))
+                .setDefault(1)
+                .help("Specify the amount of threads processing the devices; 1 processes on the input thread");
+        processingGroup.addArgument("--hop-size")
+                .metavar("hopSize")
+                .type(Integer.class)
+                .choices(new RangeArgumentChoice<>(0, 99))
+                .setDefault(0)
+                .help("Specify the samples between overlapping impulsive windows of each device; 0 cuts each packet in consecutive windows");
+        processingGroup.addArgument("-m", "--model")
+                .metavar("model")
+                .help("Specify the decision tree model file of the gunshot detector; the built-in model is used if omitted");
+
         // Extensions arguments
         ArgumentGroup extensionsGroup = parser.addArgumentGroup("Extensions").description("Enable extra built-in extensions");
         extensionsGroup.addArgument("--wave-drawer")
                 .metavar("waveDrawer")
                 .action(Arguments.storeTrue())
                 .help("Converts the received data in a graphically wave visualization");
+        extensionsGroup.addArgument("--spectrogram")
+                .metavar("spectrogram")
+                .action(Arguments.storeTrue())
+                .help("Keeps a rolling spectrogram of each device, served as PNG images by the API");
         extensionsGroup.addArgument("--sound-player")
                 .metavar("soundPlayer")
                 .action(Arguments.storeTrue())
@@ -105,7 +283,12 @@ public class Application {
 
         // Parse
         try {
-            return parser.parseArgs(args);
+            final Namespace ns = parser.parseArgs(args);
+            if (ns.getString("input").equals("socket") && ns.getInt("shards") > 1)
+                throw new ArgumentParserException("The socket input reuses its buffer for every packet, use the channel input with shards", parser);
+            if (!ns.getString("input").equals("channel") && ns.getBoolean("batch"))
+                throw new ArgumentParserException("Only the channel input receives in batches, use it with --batch", parser);
+            return ns;
         } catch (ArgumentParserException e) {
             log.error("Failed to parse arguments", e);
             return null;
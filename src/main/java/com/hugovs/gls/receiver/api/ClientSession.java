@@ -0,0 +1,128 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.api.model.Device;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+
+/**
+ * The state of a client connected to the {@link GunshotAPI}, attached to its {@link WebSocket}.
+ *
+ * @author Hugo Sartori
+ */
+public class ClientSession {
+
+    private volatile Encoding frequencyEncoding = Encoding.JSON;
+    private volatile TopicFilter frequencyFilter = TopicFilter.ALL;
+    private volatile TopicFilter gunshotFilter = TopicFilter.ALL;
+    private volatile FrequencyRateLimiter rateLimiter;
+    private volatile long skippedFrames;
+
+    /**
+     * Get the session of a given connection, creating it if needed.
+     *
+     * @param webSocket: the connection.
+     * @return the {@link ClientSession} of the connection.
+     */
+    public static ClientSession of(final WebSocket webSocket) {
+        ClientSession session = webSocket.getAttachment();
+        if (session == null) {
+            session = new ClientSession();
+            webSocket.setAttachment(session);
+        }
+        return session;
+    }
+
+    /**
+     * @return the encoding of the frequency frames sent to this client.
+     */
+    public Encoding getFrequencyEncoding() {
+        return frequencyEncoding;
+    }
+
+    /**
+     * @param frequencyEncoding: the encoding of the frequency frames sent to this client.
+     */
+    public void setFrequencyEncoding(final Encoding frequencyEncoding) {
+        this.frequencyEncoding = frequencyEncoding;
+    }
+
+    /**
+     * @return the devices whose frequencies are sent to this client.
+     */
+    public TopicFilter getFrequencyFilter() {
+        return frequencyFilter;
+    }
+
+    /**
+     * @param frequencyFilter: the devices whose frequencies are sent to this client.
+     */
+    public void setFrequencyFilter(final TopicFilter frequencyFilter) {
+        this.frequencyFilter = frequencyFilter;
+    }
+
+    /**
+     * @return the devices whose gunshots are sent to this client.
+     */
+    public TopicFilter getGunshotFilter() {
+        return gunshotFilter;
+    }
+
+    /**
+     * @param gunshotFilter: the devices whose gunshots are sent to this client.
+     */
+    public void setGunshotFilter(final TopicFilter gunshotFilter) {
+        this.gunshotFilter = gunshotFilter;
+    }
+
+    /**
+     * @return the rate limiter of the frequency frames, or {@code null} if they are not limited.
+     */
+    public FrequencyRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @param rateLimiter: the rate limiter of the frequency frames, or {@code null} to not limit them.
+     */
+    public void setRateLimiter(final FrequencyRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Checks if the send queue of a connection is above a given amount of frames, so the client is not keeping up.
+     *
+     * @param webSocket: the connection.
+     * @param maxQueued: the maximum amount of frames waiting to be written.
+     * @return {@code true} if the client is backed up.
+     */
+    public static boolean isBackedUp(final WebSocket webSocket, final int maxQueued) {
+        if (webSocket instanceof WebSocketImpl) return ((WebSocketImpl) webSocket).outQueue.size() > maxQueued;
+        return webSocket.hasBufferedData();
+    }
+
+    /**
+     * Count a frequency frame not sent because the client was backed up.
+     * Called only by the publisher thread.
+     */
+    void skipFrame() {
+        skippedFrames++;
+    }
+
+    /**
+     * @return the amount of frequency frames not sent because the client was backed up.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Resolve the areas of the filters again, after the registered devices changed.
+     *
+     * @param registered: the registered devices.
+     */
+    public void resolve(final Iterable<Device> registered) {
+        frequencyFilter.resolve(registered);
+        gunshotFilter.resolve(registered);
+    }
+
+}
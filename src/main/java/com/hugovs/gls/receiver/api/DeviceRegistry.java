@@ -0,0 +1,229 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.api.model.Device;
+import com.hugovs.gls.receiver.util.GeoUtils;
+import com.hugovs.gls.receiver.util.LongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The registered devices, indexed by id and by location.
+ *
+ * Devices are kept in an immutable {@link Snapshot}: a primitive map by id and a grid of cells of
+ * {@code cellSize} meters. A mutation copies the devices into a new snapshot and publishes it through a volatile
+ * field, so lookups never lock nor allocate and can be done from the detection threads. Mutations are serialized
+ * and cost O(n), which is cheap for the rate devices are provisioned.
+ *
+ * @author Hugo Sartori
+ */
+public class DeviceRegistry implements Iterable<Device> {
+
+    public static final double DEFAULT_CELL_SIZE = 1000;
+
+    private final double cellSize;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates an empty {@link DeviceRegistry} instance with cells of {@link #DEFAULT_CELL_SIZE} meters.
+     */
+    public DeviceRegistry() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates an empty {@link DeviceRegistry} instance.
+     *
+     * @param cellSize: the size of the cells of the spatial index, in meters.
+     */
+    public DeviceRegistry(double cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("The cell size must be positive");
+        this.cellSize = cellSize;
+        this.snapshot = new Snapshot(new LongHashMap<>(0), cellSize / GeoUtils.METERS_PER_DEGREE);
+    }
+
+    /**
+     * Replace every device of the registry.
+     *
+     * @param devices: the new devices.
+     */
+    public synchronized void reset(Collection<Device> devices) {
+        final LongHashMap<Device> byId = new LongHashMap<>(devices.size());
+        for (final Device device : devices) byId.put(device.id, copy(device));
+        publish(byId);
+    }
+
+    /**
+     * Add or replace a device.
+     *
+     * @param device: the device.
+     */
+    public synchronized void put(Device device) {
+        final LongHashMap<Device> byId = mutableCopy(1);
+        byId.put(device.id, copy(device));
+        publish(byId);
+    }
+
+    /**
+     * Remove a device.
+     *
+     * @param id: the device's id.
+     * @return {@code true} if the device was registered.
+     */
+    public synchronized boolean remove(long id) {
+        if (snapshot.byId.get(id) == null) return false;
+        final LongHashMap<Device> byId = new LongHashMap<>(snapshot.devices.length);
+        for (final Device device : snapshot.devices)
+            if (device.id != id) byId.put(device.id, device);
+        publish(byId);
+        return true;
+    }
+
+    /**
+     * Get a device by id.
+     *
+     * @param id: the device's id.
+     * @return the device, or {@code null} if it is not registered. It must not be modified.
+     */
+    public Device get(long id) {
+        return snapshot.byId.get(id);
+    }
+
+    /**
+     * Find the devices within a distance of a coordinate.
+     *
+     * @param latitude:  the latitude of the center.
+     * @param longitude: the longitude of the center.
+     * @param meters:    the distance from the center.
+     * @return the devices found. They must not be modified.
+     */
+    public List<Device> within(double latitude, double longitude, double meters) {
+        final List<Device> found = new ArrayList<>();
+        snapshot.within(latitude, longitude, meters, found);
+        return found;
+    }
+
+    /**
+     * @return the registered devices. They must not be modified.
+     */
+    public Device[] getAll() {
+        return snapshot.devices.clone();
+    }
+
+    /**
+     * @return the amount of registered devices.
+     */
+    public int size() {
+        return snapshot.devices.length;
+    }
+
+    /**
+     * @return an iterator over the registered devices at the time of the call. They must not be modified.
+     */
+    @Override
+    public Iterator<Device> iterator() {
+        return Arrays.asList(snapshot.devices).iterator();
+    }
+
+    /**
+     * Copy the map by id of the current snapshot, to be changed and published as the next one.
+     *
+     * @param extra: the amount of devices that may be added to the copy.
+     * @return the copy.
+     */
+    private LongHashMap<Device> mutableCopy(int extra) {
+        final Device[] devices = snapshot.devices;
+        final LongHashMap<Device> byId = new LongHashMap<>(devices.length + extra);
+        for (final Device device : devices) byId.put(device.id, device);
+        return byId;
+    }
+
+    /**
+     * Publish a new snapshot built on a given map, which must not be changed afterwards.
+     *
+     * @param byId: the devices by id.
+     */
+    private void publish(LongHashMap<Device> byId) {
+        snapshot = new Snapshot(byId, cellSize / GeoUtils.METERS_PER_DEGREE);
+    }
+
+    private static Device copy(Device device) {
+        return new Device(device.id, device.latitude, device.longitude);
+    }
+
+    /**
+     * An immutable view of the registered devices.
+     */
+    private static final class Snapshot {
+
+        private final Device[] devices;
+        private final LongHashMap<Device> byId;
+        private final LongHashMap<Device[]> cells;
+        private final double cellDegrees;
+
+        private Snapshot(LongHashMap<Device> byId, double cellDegrees) {
+            this.byId = byId;
+            this.cellDegrees = cellDegrees;
+            this.devices = new Device[byId.size()];
+            final int[] index = {0};
+            byId.forEach((id, device) -> devices[index[0]++] = device);
+
+            final LongHashMap<List<Device>> lists = new LongHashMap<>(devices.length);
+            for (final Device device : devices) {
+                final long key = cellOf(latitudeCell(device.latitude), longitudeCell(device.longitude));
+                List<Device> list = lists.get(key);
+                if (list == null) lists.put(key, list = new ArrayList<>(2));
+                list.add(device);
+            }
+            this.cells = new LongHashMap<>(lists.size());
+            lists.forEach((key, list) -> cells.put(key, list.toArray(new Device[0])));
+        }
+
+        private void within(double latitude, double longitude, double meters, List<Device> found) {
+            final double latitudeDelta = meters / GeoUtils.METERS_PER_DEGREE;
+            final double farthestLatitude = Math.min(90, Math.abs(latitude) + latitudeDelta);
+            final double longitudeDelta = meters / GeoUtils.metersPerLongitudeDegree(farthestLatitude);
+
+            final int minLatitude = latitudeCell(latitude - latitudeDelta);
+            final int maxLatitude = latitudeCell(latitude + latitudeDelta);
+            final int minLongitude = longitudeCell(longitude - longitudeDelta);
+            final int maxLongitude = longitudeCell(longitude + longitudeDelta);
+            final double cellCount = (maxLatitude - minLatitude + 1.0) * (maxLongitude - minLongitude + 1.0);
+
+            // Scan every device when the area covers more cells than devices, or wraps around the poles or the antimeridian
+            if (cellCount > devices.length || farthestLatitude >= 90 || Math.abs(longitude) + longitudeDelta > 180) {
+                for (final Device device : devices)
+                    if (GeoUtils.distance(latitude, longitude, device.latitude, device.longitude) <= meters)
+                        found.add(device);
+                return;
+            }
+
+            for (int i = minLatitude; i <= maxLatitude; i++) {
+                for (int j = minLongitude; j <= maxLongitude; j++) {
+                    final Device[] cell = cells.get(cellOf(i, j));
+                    if (cell == null) continue;
+                    for (final Device device : cell)
+                        if (GeoUtils.distance(latitude, longitude, device.latitude, device.longitude) <= meters)
+                            found.add(device);
+                }
+            }
+        }
+
+        private int latitudeCell(double latitude) {
+            return (int) Math.floor(latitude / cellDegrees);
+        }
+
+        private int longitudeCell(double longitude) {
+            return (int) Math.floor(longitude / cellDegrees);
+        }
+
+        private static long cellOf(int latitudeCell, int longitudeCell) {
+            return ((long) latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+        }
+
+    }
+
+}
@@ -0,0 +1,302 @@
+package com.hugovs.gls.receiver.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.hugovs.gls.receiver.api.model.Device;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Persists the registered devices as a snapshot plus an append-only log of mutations.
+ *
+ * The snapshot is the {@code database.json} array of devices. Every add, update or delete is appended as a JSON line
+ * to {@code database.json.log} by a writer thread, which syncs the log once per batch of queued mutations, so a
+ * mutation costs a single append and never blocks the caller. When the log grows beyond {@code compactThreshold}
+ * entries, a new snapshot is written to a temporary file, synced, moved over the old one (and the directory synced,
+ * so the move itself is durable) and the log is truncated.
+ *
+ * On {@link #open()} the snapshot is loaded and the log replayed; a torn last line, left by a crash in the middle of
+ * an append, is ignored. An unreadable line followed by others fails the open before anything is compacted, so the
+ * mutations after it are not lost. The result is then compacted. Mutations are rejected until the store is open.
+ *
+ * @author Hugo Sartori
+ */
+public class DeviceStore {
+
+    private static final Logger log = Logger.getLogger(DeviceStore.class);
+
+    public static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+
+    private static final String ADD = "add", UPDATE = "update", DELETE = "delete";
+    private static final Entry STOP = new Entry(null, null);
+
+    private final Gson gson = new Gson();
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final int compactThreshold;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Map<Long, Device> devices = new LinkedHashMap<>();
+    private FileChannel logChannel;
+    private int logEntries;
+    private Thread writer;
+    private volatile boolean open;
+
+    /**
+     * Creates an {@link DeviceStore} instance on {@code database.json}.
+     */
+    public DeviceStore() {
+        this(Paths.get("database.json"), DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Creates an {@link DeviceStore} instance.
+     *
+     * @param snapshotPath:     the path of the snapshot; the log is next to it with the {@code .log} extension.
+     * @param compactThreshold: the amount of log entries that triggers a compaction.
+     */
+    public DeviceStore(final Path snapshotPath, final int compactThreshold) {
+        this.snapshotPath = snapshotPath;
+        this.logPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".log");
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Load the snapshot, replay the log, compact them and start the writer thread.
+     *
+     * @return the registered devices.
+     * @throws IOException if the files can not be read or written.
+     */
+    public Collection<Device> open() throws IOException {
+        loadSnapshot();
+        replayLog();
+        compact();
+
+        writer = new Thread(this::run, "device-store");
+        writer.setDaemon(true);
+        writer.start();
+        open = true;
+
+        log.info("Loaded " + devices.size() + " devices from " + snapshotPath);
+        return new ArrayList<>(devices.values());
+    }
+
+    /**
+     * Enqueue an added device to be persisted.
+     *
+     * @param device: the added device.
+     * @throws IllegalStateException if the store is not open.
+     */
+    public void add(final Device device) {
+        enqueue(new Entry(ADD, copy(device)));
+    }
+
+    /**
+     * Enqueue an updated device to be persisted.
+     *
+     * @param device: the updated device.
+     * @throws IllegalStateException if the store is not open.
+     */
+    public void update(final Device device) {
+        enqueue(new Entry(UPDATE, copy(device)));
+    }
+
+    /**
+     * Enqueue a deleted device to be persisted.
+     *
+     * @param device: the deleted device.
+     * @throws IllegalStateException if the store is not open.
+     */
+    public void delete(final Device device) {
+        enqueue(new Entry(DELETE, copy(device)));
+    }
+
+    /**
+     * @return {@code true} if the store is open and persists the mutations.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    private void enqueue(final Entry entry) {
+        // Nothing would ever take the entry from the queue without the writer thread
+        if (!open) throw new IllegalStateException("The device store is not open, the mutation would not be persisted");
+        queue.add(entry);
+    }
+
+    /**
+     * Persist the pending mutations and stop the writer thread.
+     */
+    public void close() {
+        if (writer == null) return;
+        open = false;
+        // The writer is not interrupted, as it would close the log channel in the middle of a write
+        queue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    private void run() {
+        final List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+            running = !batch.remove(STOP);
+            if (batch.isEmpty()) continue;
+
+            try {
+                append(batch);
+                if (logEntries >= compactThreshold) compact();
+            } catch (IOException e) {
+                log.error("Failed to persist " + batch.size() + " device mutations", e);
+            }
+            batch.clear();
+        }
+
+        try {
+            logChannel.close();
+        } catch (IOException e) {
+            log.error("Failed to close the device log", e);
+        }
+    }
+
+    /**
+     * Append a batch of mutations to the log and sync it once.
+     */
+    private void append(final List<Entry> batch) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        for (final Entry entry : batch) {
+            lines.append(gson.toJson(entry)).append('\n');
+            apply(entry);
+        }
+
+        final ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) logChannel.write(bytes);
+        logChannel.force(false);
+        logEntries += batch.size();
+    }
+
+    /**
+     * Write the current devices to a new snapshot and truncate the log.
+     */
+    private void compact() throws IOException {
+        final Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer bytes = ByteBuffer.wrap(gson.toJson(devices.values()).getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) channel.write(bytes);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        if (logChannel != null) logChannel.close();
+        logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        logEntries = 0;
+        log.info("Device database compacted with " + devices.size() + " devices");
+    }
+
+    /**
+     * Sync the directory of the snapshot, so a move into it survives a crash.
+     */
+    private void syncDirectory() {
+        final Path directory = snapshotPath.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms (as Windows) can not open a directory, their moves are synced by the file system
+            log.debug("Failed to sync the directory " + directory, e);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) return;
+        try (Reader reader = Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8)) {
+            final Device[] loaded = gson.fromJson(reader, Device[].class);
+            if (loaded != null)
+                for (final Device device : loaded) devices.put(device.id, device);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid device snapshot " + snapshotPath, e);
+        }
+    }
+
+    private void replayLog() throws IOException {
+        if (!Files.exists(logPath)) return;
+        int replayed = 0;
+        int lineNumber = 0;
+        int tornLine = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                // Only the last line can be torn by a crash, anything else is corruption that compact() would erase
+                if (tornLine > 0)
+                    throw new IOException("Invalid device log entry at line " + tornLine + " of " + logPath
+                            + ", followed by more entries");
+                final Entry entry;
+                try {
+                    entry = gson.fromJson(line, Entry.class);
+                } catch (JsonParseException e) {
+                    tornLine = lineNumber;
+                    continue;
+                }
+                if (entry == null || entry.device == null) continue;
+                apply(entry);
+                replayed++;
+            }
+        }
+        if (tornLine > 0) log.warn("Ignoring torn device log entry after " + replayed + " entries");
+        if (replayed > 0) log.info("Replayed " + replayed + " device mutations");
+    }
+
+    private void apply(final Entry entry) {
+        if (DELETE.equals(entry.op)) devices.remove(entry.device.id);
+        else devices.put(entry.device.id, entry.device);
+    }
+
+    private static Device copy(final Device device) {
+        return new Device(device.id, device.latitude, device.longitude);
+    }
+
+    /**
+     * A line of the log.
+     */
+    private static class Entry {
+        String op;
+        Device device;
+
+        Entry(String op, Device device) {
+            this.op = op;
+            this.device = device;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.hugovs.gls.receiver.api;
+
+/**
+ * The encodings of the frequency frames that a client can subscribe to.
+ *
+ * @author Hugo Sartori
+ */
+public enum Encoding {
+
+    /** JSON text messages, the default. */
+    JSON(0),
+    /** Binary frames with little-endian float32 values. */
+    FLOAT32(1),
+    /** Binary frames with values quantized to little-endian uint16 over the frame maximum. */
+    UINT16(2);
+
+    final byte code;
+
+    Encoding(int code) {
+        this.code = (byte) code;
+    }
+
+}
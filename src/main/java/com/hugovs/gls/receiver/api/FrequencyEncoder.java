@@ -0,0 +1,77 @@
+package com.hugovs.gls.receiver.api;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes frequency frames in the binary protocol.
+ *
+ * Every frame is little-endian, with a 24 bytes header followed by the values:
+ * <pre>
+ * offset  size  field
+ *      0     1  type (1 = frequency)
+ *      1     1  encoding (1 = float32, 2 = uint16)
+ *      2     2  bin count (uint16)
+ *      4     8  device id (int64)
+ *     12     8  timestamp (int64)
+ *     20     4  scale (float32): the value of 65535 for uint16 frames, 1 for float32 frames
+ *     24     -  bin count values, 4 bytes each for float32, 2 bytes each for uint16
+ * </pre>
+ * A uint16 value {@code q} is decoded as {@code q * scale / 65535}.
+ *
+ * An instance reuses its buffer, so it must be used by a single thread and the returned array is only valid until
+ * the next call.
+ *
+ * @author Hugo Sartori
+ */
+public class FrequencyEncoder {
+
+    public static final byte TYPE_FREQUENCY = 1;
+    public static final int HEADER_SIZE = 24;
+
+    private static final int UINT16_MAX = 0xFFFF;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+    /**
+     * Encode a frequency frame.
+     *
+     * @param encoding:  the binary encoding, {@link Encoding#FLOAT32} or {@link Encoding#UINT16}.
+     * @param deviceId:  the device's id.
+     * @param timestamp: the timestamp of the frame.
+     * @param values:    the frequency values.
+     * @return the encoded frame.
+     */
+    public byte[] encode(Encoding encoding, long deviceId, long timestamp, double[] values) {
+        if (encoding == Encoding.JSON) throw new IllegalArgumentException("JSON is not a binary encoding");
+        if (values.length > UINT16_MAX) throw new IllegalArgumentException("Too many bins: " + values.length);
+
+        final int valueSize = encoding == Encoding.FLOAT32 ? 4 : 2;
+        final int size = HEADER_SIZE + values.length * valueSize;
+        if (buffer.capacity() != size) buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear();
+
+        buffer.put(TYPE_FREQUENCY);
+        buffer.put(encoding.code);
+        buffer.putShort((short) values.length);
+        buffer.putLong(deviceId);
+        buffer.putLong(timestamp);
+
+        if (encoding == Encoding.FLOAT32) {
+            buffer.putFloat(1f);
+            for (final double value : values)
+                buffer.putFloat((float) value);
+        } else {
+            double max = 0;
+            for (final double value : values)
+                if (value > max) max = value;
+            buffer.putFloat((float) max);
+            final double quantize = max > 0 ? UINT16_MAX / max : 0;
+            for (final double value : values)
+                buffer.putShort((short) Math.round(Math.max(0, value) * quantize));
+        }
+
+        return buffer.array();
+    }
+
+}
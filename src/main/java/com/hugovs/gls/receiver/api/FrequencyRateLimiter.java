@@ -0,0 +1,148 @@
+package com.hugovs.gls.receiver.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Limits the rate of frequency frames sent to a client, per device.
+ *
+ * Frames that arrive before the interval of a device has passed are merged into a single spectrum, either keeping
+ * the maximum of each bin or averaging them, and the merged spectrum is sent with the next frame allowed. A frame
+ * offered while the client can not take it is merged and kept as well, so nothing of the interval (as a peak) is lost
+ * while the client is backed up. At most {@link #MAX_DEVICES} devices are tracked; the least recently seen device is
+ * forgotten beyond that, so the memory of a client is bounded.
+ *
+ * An instance must be used by a single thread.
+ *
+ * @author Hugo Sartori
+ */
+public class FrequencyRateLimiter {
+
+    public static final int MAX_DEVICES = 256;
+
+    /**
+     * How the frames of an interval are merged.
+     */
+    public enum Merge {
+        MAX, AVERAGE
+    }
+
+    private final long intervalNanos;
+    private final Merge merge;
+    private final Map<Long, Accumulator> accumulators = new LinkedHashMap<Long, Accumulator>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Accumulator> eldest) {
+            return size() > MAX_DEVICES;
+        }
+    };
+    private long mergedFrames;
+
+    /**
+     * Creates an {@link FrequencyRateLimiter} instance.
+     *
+     * @param maxRate: the maximum amount of frames per second of each device.
+     * @param merge:   how the frames of an interval are merged.
+     */
+    public FrequencyRateLimiter(double maxRate, Merge merge) {
+        if (maxRate <= 0) throw new IllegalArgumentException("The rate must be positive");
+        this.intervalNanos = (long) (1e9 / maxRate);
+        this.merge = merge;
+    }
+
+    /**
+     * Merge a frame and check if the device can send.
+     *
+     * @param deviceId: the device's id.
+     * @param values:   the frequency values.
+     * @param now:      the current time, in nanoseconds.
+     * @return the merged values to be sent, valid until the next call for the device;
+     *         {@code null} if the frame was merged to be sent later.
+     */
+    public double[] offer(long deviceId, double[] values, long now) {
+        return offer(deviceId, values, now, true);
+    }
+
+    /**
+     * Merge a frame and check if the device can send.
+     *
+     * @param deviceId: the device's id.
+     * @param values:   the frequency values.
+     * @param now:      the current time, in nanoseconds.
+     * @param ready:    if the client can take a frame now; if not, the merged values are kept for a later call.
+     * @return the merged values to be sent, valid until the next call for the device;
+     *         {@code null} if the frame was merged to be sent later.
+     */
+    public double[] offer(long deviceId, double[] values, long now, boolean ready) {
+        Accumulator accumulator = accumulators.get(deviceId);
+        if (accumulator == null) {
+            accumulator = new Accumulator(values.length, now - intervalNanos);
+            accumulators.put(deviceId, accumulator);
+        }
+
+        accumulator.add(values, merge);
+        if (!ready || now - accumulator.lastSent < intervalNanos) {
+            mergedFrames++;
+            return null;
+        }
+
+        accumulator.lastSent = now;
+        return accumulator.take(merge);
+    }
+
+    /**
+     * @return the amount of frames merged instead of being sent.
+     */
+    public long getMergedFrames() {
+        return mergedFrames;
+    }
+
+    @Override
+    public String toString() {
+        return (1e9 / intervalNanos) + "/s, " + merge.name().toLowerCase();
+    }
+
+    /**
+     * The merged frames of a device since the last frame sent.
+     */
+    private static class Accumulator {
+
+        private double[] values;
+        private double[] output;
+        private int count;
+        private long lastSent;
+
+        Accumulator(int length, long lastSent) {
+            this.values = new double[length];
+            this.output = new double[length];
+            this.lastSent = lastSent;
+        }
+
+        void add(double[] frame, Merge merge) {
+            if (frame.length != values.length) {
+                values = new double[frame.length];
+                output = new double[frame.length];
+                count = 0;
+            }
+            if (count == 0) {
+                System.arraycopy(frame, 0, values, 0, frame.length);
+            } else if (merge == Merge.MAX) {
+                for (int i = 0; i < frame.length; i++)
+                    if (frame[i] > values[i]) values[i] = frame[i];
+            } else {
+                for (int i = 0; i < frame.length; i++)
+                    values[i] += frame[i];
+            }
+            count++;
+        }
+
+        double[] take(Merge merge) {
+            final double scale = merge == Merge.AVERAGE ? 1.0 / count : 1.0;
+            for (int i = 0; i < values.length; i++)
+                output[i] = values[i] * scale;
+            count = 0;
+            return output;
+        }
+
+    }
+
+}
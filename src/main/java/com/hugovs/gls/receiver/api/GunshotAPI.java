@@ -1,10 +1,13 @@
 package com.hugovs.gls.receiver.api;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.hugovs.gls.receiver.api.model.BoundingBox;
 import com.hugovs.gls.receiver.api.model.Device;
 import com.hugovs.gls.receiver.api.model.Frequency;
 import com.hugovs.gls.receiver.api.model.Gunshot;
+import com.hugovs.gls.receiver.api.model.LocatedGunshot;
+import com.hugovs.gls.receiver.api.model.Spectrogram;
+import com.hugovs.gls.receiver.metrics.Metrics;
 import org.apache.log4j.Logger;
 import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
@@ -12,22 +15,67 @@ import org.java_websocket.server.WebSocketServer;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * WebSocket API to send GLS data to the world.
  *
+ * Every client receives the frequencies and gunshots of all devices until it subscribes to a topic with a
+ * {@code subscribe.frequency} or {@code subscribe.gunshot} message, whose body may restrict the devices by id and
+ * by area: {@code {"devices": [1, 2], "box": {"minLatitude": 0, "minLongitude": 0, "maxLatitude": 1,
+ * "maxLongitude": 1}}}. The {@code unsubscribe.frequency} and {@code unsubscribe.gunshot} messages stop a topic.
+ *
+ * The body of {@code subscribe.frequency} may also limit the rate of frames of each device, merging the frames in
+ * between by maximum or average: {@code {"maxRate": 5, "merge": "max"}}. Frames are skipped for a client whose
+ * send queue is above {@link #MAX_QUEUED_FRAMES}, so a slow client does not grow its queue without limit.
+ *
+ * The subscribers of each topic are kept in a {@link SubscriberIndex} by device, rebuilt when a client connects,
+ * disconnects or subscribes and when the devices change, so a frame only visits the clients subscribed to its device.
+ *
+ * Frequencies are sent as JSON by default. A client can opt in to compact binary frames (see
+ * {@link FrequencyEncoder}) with {@code "encoding": "float32"} or {@code "encoding": "uint16"} in the body of its
+ * {@code subscribe.frequency} message.
+ *
+ * Gunshots heard by several nearby devices are also grouped and located (see {@link GunshotCorrelator}), and sent
+ * once as {@code topic/gunshot.located} to the clients subscribed to gunshots of any of those devices.
+ *
+ * When a {@link SpectrogramSource} is set, the spectrogram of a device is requested as a PNG image with a
+ * {@code spectrogram.fetch} message: {@code {"deviceId": 1, "columns": 512}}. The image is sent back encoded in
+ * base64 in a {@code response/spectrogram.fetch} message.
+ *
+ * The latency histograms and counters of the receiver (see {@link Metrics}) are requested with a
+ * {@code metrics.fetch} message and sent back in a {@code response/metrics.fetch} message.
+ *
+ * The devices near a coordinate are requested with a {@code device.nearby} message:
+ * {@code {"latitude": 0, "longitude": 0, "radius": 500}}, with the radius in meters.
+ *
  * @author Hugo Sartori
  */
 public class GunshotAPI extends WebSocketServer {
 
     private static final Logger log = Logger.getLogger(GunshotAPI.class);
 
-    private DeviceSet devices = new DeviceSet();
+    public static final int MAX_QUEUED_FRAMES = 64;
+    public static final int DEFAULT_SPECTROGRAM_COLUMNS = 512;
+
+    private final DeviceRegistry devices = new DeviceRegistry();
     private Gson gson = new Gson();
-    private FileReader dbReader;
-    private FileWriter dbWriter;
+    private final DeviceStore store = new DeviceStore();
+    private volatile SpectrogramSource spectrogramSource;
+    private final SubscriberIndex frequencySubscribers = new SubscriberIndex(ClientSession::getFrequencyFilter);
+    private final SubscriberIndex gunshotSubscribers = new SubscriberIndex(ClientSession::getGunshotFilter);
+
+    // Used only by the publisher thread
+    private final FrequencyEncoder frequencyEncoder = new FrequencyEncoder();
+    private final List<WebSocket> jsonClients = new ArrayList<>();
+    private final List<WebSocket> float32Clients = new ArrayList<>();
+    private final List<WebSocket> uint16Clients = new ArrayList<>();
+    private final List<WebSocket> gunshotClients = new ArrayList<>();
 
 
     public GunshotAPI(int port) {
@@ -41,6 +89,8 @@ public class GunshotAPI extends WebSocketServer {
     @Override
     public void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
         try {
+            ClientSession.of(webSocket);
+            rebuildSubscribers();
             log.info("Connection STARTED with " + webSocket.getRemoteSocketAddress().getAddress().getHostAddress());
         } catch (Exception e) {
             log.error("Failed to handle onoOpen", e);
@@ -50,6 +100,7 @@ public class GunshotAPI extends WebSocketServer {
     @Override
     public void onClose(WebSocket webSocket, int code, String reason, boolean b) {
         try {
+            rebuildSubscribers();
             log.info("Connection CLOSE: " + code);
         } catch (Exception e) {
             log.error("Failed to handle onClose", e);
@@ -58,40 +109,105 @@ public class GunshotAPI extends WebSocketServer {
 
     @Override
     public void onMessage(WebSocket webSocket, String s) {
-        log.debug("onMessage from " + webSocket.getRemoteSocketAddress().getAddress().getHostAddress() + ": " + s);
+        if (log.isTraceEnabled())
+            log.trace("onMessage from " + webSocket.getRemoteSocketAddress().getAddress().getHostAddress() + ": " + s);
         try {
             final Message message = gson.fromJson(s, Message.class);
-            log.info("Message received from " + webSocket.getRemoteSocketAddress().getAddress().getHostAddress() + " to " + message.destination);
+            if (log.isDebugEnabled())
+                log.debug("Message received from " + webSocket.getRemoteSocketAddress().getAddress().getHostAddress() + " to " + message.destination);
 
             final String[] parts = message.destination.split("[.]");
             if (parts[0].equals("device")) {
                 switch (parts[1]) {
                     case "add": {
                         final Device device = gson.fromJson(message.body, Device.class);
-                        devices.add(device);
+                        store.add(device);
+                        devices.put(device);
                         log.info("Added new device: " + device);
-                        updateDatabase();
+                        resolveSubscriptions();
                         break;
                     }
                     case "update": {
                         final Device device = gson.fromJson(message.body, Device.class);
-                        devices.add(device);
+                        store.update(device);
+                        devices.put(device);
                         log.info("Updated device: " + device);
-                        updateDatabase();
+                        resolveSubscriptions();
                         break;
                     }
                     case "delete": {
                         final Device device = gson.fromJson(message.body, Device.class);
-                        devices.remove(device);
+                        store.delete(device);
+                        devices.remove(device.id);
                         log.info("Deleted device: " + device);
-                        updateDatabase();
+                        resolveSubscriptions();
                         break;
                     }
                     case "fetch": {
-                        webSocket.send(gson.toJson(new Message("response/device.fetch", gson.toJson(devices))));
+                        webSocket.send(gson.toJson(new Message("response/device.fetch", gson.toJson(devices.getAll()))));
+                        break;
+                    }
+                    case "nearby": {
+                        final Nearby nearby = gson.fromJson(message.body, Nearby.class);
+                        final List<Device> found = devices.within(nearby.latitude, nearby.longitude, nearby.radius);
+                        webSocket.send(gson.toJson(new Message("response/device.nearby", gson.toJson(found))));
+                        break;
+                    }
+                }
+            } else if (parts[0].equals("subscribe")) {
+                Subscription subscription = gson.fromJson(message.body, Subscription.class);
+                if (subscription == null) subscription = new Subscription();
+                final ClientSession session = ClientSession.of(webSocket);
+                final TopicFilter filter = TopicFilter.of(subscription.devices, subscription.box, devices);
+                switch (parts[1]) {
+                    case "frequency": {
+                        final Encoding encoding = subscription.encoding != null
+                                ? Encoding.valueOf(subscription.encoding.toUpperCase(Locale.ROOT))
+                                : Encoding.JSON;
+                        final FrequencyRateLimiter rateLimiter = subscription.maxRate != null
+                                ? new FrequencyRateLimiter(subscription.maxRate, subscription.merge != null
+                                        ? FrequencyRateLimiter.Merge.valueOf(subscription.merge.toUpperCase(Locale.ROOT))
+                                        : FrequencyRateLimiter.Merge.MAX)
+                                : null;
+                        session.setFrequencyEncoding(encoding);
+                        session.setRateLimiter(rateLimiter);
+                        session.setFrequencyFilter(filter);
+                        log.info("Frequencies subscribed: " + filter + ", encoded as " + encoding
+                                + (rateLimiter != null ? ", limited to " + rateLimiter : ""));
+                        break;
+                    }
+                    case "gunshot": {
+                        session.setGunshotFilter(filter);
+                        log.info("Gunshots subscribed: " + filter);
                         break;
                     }
                 }
+                rebuildSubscribers();
+            } else if (parts[0].equals("spectrogram") && parts[1].equals("fetch")) {
+                final SpectrogramRequest request = gson.fromJson(message.body, SpectrogramRequest.class);
+                final SpectrogramSource source = spectrogramSource;
+                final int columns = request.columns != null ? request.columns : DEFAULT_SPECTROGRAM_COLUMNS;
+                final byte[] png = source != null ? source.renderPng(request.deviceId, columns) : null;
+                final Spectrogram spectrogram = new Spectrogram(request.deviceId,
+                        png != null ? Base64.getEncoder().encodeToString(png) : null);
+                webSocket.send(gson.toJson(new Message("response/spectrogram.fetch", gson.toJson(spectrogram))));
+            } else if (parts[0].equals("metrics") && parts[1].equals("fetch")) {
+                final Metrics.Snapshot metrics = Metrics.snapshot();
+                final GunshotPublisher publisher = GunshotAPIManager.getPublisher();
+                if (publisher != null) {
+                    metrics.counters.put("publisher_queue_depth", (long) publisher.getQueueDepth());
+                    metrics.counters.put("coalesced_frequencies", publisher.getCoalescedFrequencies());
+                    metrics.counters.put("dropped_frequencies", publisher.getDroppedFrequencies());
+                    metrics.counters.put("located_gunshots", publisher.getPublishedLocatedGunshots());
+                }
+                webSocket.send(gson.toJson(new Message("response/metrics.fetch", gson.toJson(metrics))));
+            } else if (parts[0].equals("unsubscribe")) {
+                final ClientSession session = ClientSession.of(webSocket);
+                switch (parts[1]) {
+                    case "frequency": session.setFrequencyFilter(TopicFilter.NONE); break;
+                    case "gunshot": session.setGunshotFilter(TopicFilter.NONE); break;
+                }
+                rebuildSubscribers();
             }
         } catch (Exception e) {
             log.error("Failed to handle onMessage", e);
@@ -119,66 +235,183 @@ public class GunshotAPI extends WebSocketServer {
     }
 
     /**
-     * Send a frequency register on broadcast.
+     * Send a frequency register to the clients subscribed to the device, encoded as each client subscribed to.
+     * Each encoding is serialized once for the clients without rate limit, and only if a client uses it. Clients
+     * with a rate limit get their own merged frame when their interval has passed.
+     *
+     * @param deviceId:  the device's id that refers to the extracted frequencies.
+     * @param timestamp: the timestamp of the frequencies.
+     * @param ft:        the data.
+     */
+    public void sendFrequencies(long deviceId, long timestamp, final double[] ft) {
+        jsonClients.clear();
+        float32Clients.clear();
+        uint16Clients.clear();
+        final long now = System.nanoTime();
+        final SubscriberIndex.Snapshot subscribers = frequencySubscribers.get();
+        for (final WebSocket client : subscribers.all)
+            addFrequencyClient(client, deviceId, timestamp, ft, now);
+        for (final WebSocket client : subscribers.of(deviceId))
+            addFrequencyClient(client, deviceId, timestamp, ft, now);
+
+        if (!jsonClients.isEmpty()) {
+            final Message message = new Message("topic/device.frequency", gson.toJson(new Frequency(deviceId, timestamp, ft)));
+            broadcast(gson.toJson(message), jsonClients);
+        }
+        if (!float32Clients.isEmpty())
+            broadcast(frequencyEncoder.encode(Encoding.FLOAT32, deviceId, timestamp, ft), float32Clients);
+        if (!uint16Clients.isEmpty())
+            broadcast(frequencyEncoder.encode(Encoding.UINT16, deviceId, timestamp, ft), uint16Clients);
+    }
+
+    /**
+     * Send a frequency register to a rate limited client, or add the client to the list of its encoding.
      *
-     * @param deviceId: the device's id that refers to the extracted frequencies.
-     * @param ft:       the data.
+     * @param client:    the client subscribed to the device.
+     * @param deviceId:  the device's id that refers to the extracted frequencies.
+     * @param timestamp: the timestamp of the frequencies.
+     * @param ft:        the data.
+     * @param now:       the current time in nanoseconds.
      */
-    public void sendFrequencies(long deviceId, final double[] ft) {
-        final Message message = new Message("topic/device.frequency", gson.toJson(new Frequency(deviceId, ft)));
-        broadcast(gson.toJson(message));
+    private void addFrequencyClient(WebSocket client, long deviceId, long timestamp, final double[] ft, long now) {
+        final ClientSession session = ClientSession.of(client);
+        final FrequencyRateLimiter rateLimiter = session.getRateLimiter();
+        if (rateLimiter != null) {
+            // A backed up client keeps merging until it can take the frame, so the merged peaks are not lost
+            final boolean backedUp = ClientSession.isBackedUp(client, MAX_QUEUED_FRAMES);
+            final double[] merged = rateLimiter.offer(deviceId, ft, now, !backedUp);
+            if (merged == null) {
+                if (backedUp) session.skipFrame();
+                return;
+            }
+            sendFrequencies(client, session.getFrequencyEncoding(), deviceId, timestamp, merged);
+            return;
+        }
+
+        if (ClientSession.isBackedUp(client, MAX_QUEUED_FRAMES)) {
+            session.skipFrame();
+            return;
+        }
+        switch (session.getFrequencyEncoding()) {
+            case JSON: jsonClients.add(client); break;
+            case FLOAT32: float32Clients.add(client); break;
+            case UINT16: uint16Clients.add(client); break;
+        }
+    }
+
+    /**
+     * Send a frequency register to a single client.
+     *
+     * @param client:    the client.
+     * @param encoding:  the encoding of the client.
+     * @param deviceId:  the device's id that refers to the extracted frequencies.
+     * @param timestamp: the timestamp of the frequencies.
+     * @param ft:        the data.
+     */
+    private void sendFrequencies(WebSocket client, Encoding encoding, long deviceId, long timestamp, final double[] ft) {
+        if (encoding == Encoding.JSON) {
+            final Message message = new Message("topic/device.frequency", gson.toJson(new Frequency(deviceId, timestamp, ft)));
+            client.send(gson.toJson(message));
+        } else {
+            client.send(frequencyEncoder.encode(encoding, deviceId, timestamp, ft));
+        }
     }
 
     /**
-     * Send a gunshot register on broadcast.
+     * Send a gunshot register to the clients subscribed to the device.
      *
      * @param deviceId:  the device's id that refers to the detected gunshot.
      * @param timestamp: the timestamp that the gunshot was firstly captured.
      */
     public void sendGunshot(long deviceId, long timestamp) {
-        final Message message = new Message("topic/device.gunshot", gson.toJson(new Gunshot(deviceId, timestamp)));
-        broadcast(gson.toJson(message));
+        gunshotClients.clear();
+        final SubscriberIndex.Snapshot subscribers = gunshotSubscribers.get();
+        Collections.addAll(gunshotClients, subscribers.all);
+        Collections.addAll(gunshotClients, subscribers.of(deviceId));
+        if (gunshotClients.isEmpty()) return;
+
+        final Device device = devices.get(deviceId);
+        final Gunshot gunshot = device != null
+                ? new Gunshot(deviceId, timestamp, device.latitude, device.longitude)
+                : new Gunshot(deviceId, timestamp);
+        final Message message = new Message("topic/device.gunshot", gson.toJson(gunshot));
+        broadcast(gson.toJson(message), gunshotClients);
     }
 
     /**
-     * Load the database from the database.json file.
+     * Send a located gunshot to the clients subscribed to any of the devices that heard it.
+     *
+     * @param gunshot: the located gunshot.
      */
-    private void loadDatabase() {
-        try {
-            dbReader = new FileReader("database.json");
-            devices = gson.fromJson(dbReader, DeviceSet.class);
-            if (devices == null) devices = new DeviceSet();
-        } catch (IOException | JsonSyntaxException e) {
-            log.error("Failed to load database", e);
-            devices = new DeviceSet();
+    public void sendLocatedGunshot(final LocatedGunshot gunshot) {
+        gunshotClients.clear();
+        final SubscriberIndex.Snapshot subscribers = gunshotSubscribers.get();
+        Collections.addAll(gunshotClients, subscribers.all);
+        final int allCount = gunshotClients.size();
+        for (final long deviceId : gunshot.devices) {
+            for (final WebSocket client : subscribers.of(deviceId)) {
+                // A client subscribed to several of the devices gets the event once
+                if (!gunshotClients.subList(allCount, gunshotClients.size()).contains(client)) gunshotClients.add(client);
+            }
         }
+        if (gunshotClients.isEmpty()) return;
+
+        final Message message = new Message("topic/gunshot.located", gson.toJson(gunshot));
+        broadcast(gson.toJson(message), gunshotClients);
     }
 
     /**
-     * Update the data in the database.json file.
+     * Resolve the areas of every subscription again, after the registered devices changed.
      */
-    private void updateDatabase() {
+    private void resolveSubscriptions() {
+        for (final WebSocket client : getConnections())
+            ClientSession.of(client).resolve(devices);
+        rebuildSubscribers();
+    }
 
-        try {
-            dbWriter = new FileWriter("database.json");
-            gson.toJson(devices, dbWriter);
-            dbWriter.flush();
-            dbWriter.close();
-            log.info("Database updated");
-        } catch (IOException e) {
-            log.error("Failed to update database", e);
-        }
+    /**
+     * Rebuild the subscribers of each topic, after a client or its filters changed.
+     */
+    private void rebuildSubscribers() {
+        final Collection<WebSocket> clients = getConnections();
+        frequencySubscribers.rebuild(clients);
+        gunshotSubscribers.rebuild(clients);
     }
 
-    private void closeDatabase() {
+    /**
+     * Load the database from the database.json file and its log.
+     */
+    private void loadDatabase() {
         try {
-            dbWriter.close();
-            dbReader.close();
+            devices.reset(store.open());
         } catch (IOException e) {
-            log.error("Failed to close database", e);
+            log.error("Failed to load database, device mutations will be rejected", e);
         }
     }
 
+    /**
+     * Set the source of the spectrogram images.
+     *
+     * @param source: the source, or {@code null} to stop serving images.
+     */
+    void setSpectrogramSource(SpectrogramSource source) {
+        this.spectrogramSource = source;
+    }
+
+    /**
+     * @return the registered devices.
+     */
+    DeviceRegistry getDevices() {
+        return devices;
+    }
+
+    /**
+     * Persist the pending device mutations and close the database.
+     */
+    void closeDatabase() {
+        store.close();
+    }
+
     /**
      * A class to encapsulate WebSocket messages in and out.
      */
@@ -197,11 +430,32 @@ public class GunshotAPI extends WebSocketServer {
         }
     }
 
-    private static class DeviceSet extends HashSet<Device> implements Serializable {
-        DeviceSet() { }
-        DeviceSet(Collection c) { super(c); }
-        DeviceSet(int initialCapacity, float loadFactor) { super(initialCapacity, loadFactor); }
-        DeviceSet(int initialCapacity) { super(initialCapacity); }
+    /**
+     * The body of a subscribe message.
+     */
+    private static class Subscription {
+        String encoding;
+        long[] devices;
+        BoundingBox box;
+        Double maxRate;
+        String merge;
+    }
+
+    /**
+     * The body of a spectrogram.fetch message.
+     */
+    private static class SpectrogramRequest {
+        long deviceId;
+        Integer columns;
+    }
+
+    /**
+     * The body of a device.nearby message.
+     */
+    private static class Nearby {
+        double latitude;
+        double longitude;
+        double radius;
     }
 
 }
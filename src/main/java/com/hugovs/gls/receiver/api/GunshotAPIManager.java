@@ -17,6 +17,7 @@ public class GunshotAPIManager {
     private static final Logger log = Logger.getLogger(GunshotAPIManager.class);
 
     private static GunshotAPI api;
+    private static GunshotPublisher publisher;
 
     private GunshotAPIManager() {
         //no instance
@@ -31,6 +32,8 @@ public class GunshotAPIManager {
     public static void start(final String host, final int port) {
         api = new GunshotAPI(new InetSocketAddress(host, port));
         api.start();
+        publisher = new GunshotPublisher(api, GunshotPublisher.DEFAULT_MAX_DEVICES);
+        publisher.start();
     }
 
     /**
@@ -39,8 +42,10 @@ public class GunshotAPIManager {
     public static void stop() {
         if (api == null) throw new IllegalStateException("The API does not exist");
 
+        publisher.stop();
         try {
             api.stop();
+            api.closeDatabase();
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
         }
@@ -48,21 +53,45 @@ public class GunshotAPIManager {
     }
 
     /**
-     * Send a gunshot register on broadcast.
+     * Enqueue a frequency register to be sent on broadcast.
+     * Only the latest pending frequency of each device is sent.
      *
      * @param frequency: the extracted {@link Frequency}.
      */
     public static void sendFrequencies(final Frequency frequency) {
-        api.sendFrequencies(frequency.deviceId, frequency.values);
+        publisher.publish(frequency);
     }
 
     /**
-     * Send a gunshot register on broadcast.
+     * Enqueue a gunshot register to be sent on broadcast.
      *
      * @param gunshot: the registered {@link Gunshot}.
      */
     public static void sendGunshot(final Gunshot gunshot) {
-        api.sendGunshot(gunshot.deviceId, gunshot.timestamp);
+        publisher.publish(gunshot);
+    }
+
+    /**
+     * Set the source of the spectrogram images served by the API.
+     *
+     * @param source: the source, or {@code null} to stop serving images.
+     */
+    public static void setSpectrogramSource(final SpectrogramSource source) {
+        api.setSpectrogramSource(source);
+    }
+
+    /**
+     * @return the registered devices, indexed by id and location. Lookups are lock-free.
+     */
+    public static DeviceRegistry getDevices() {
+        return api.getDevices();
+    }
+
+    /**
+     * @return the publisher that sends the registers, to read its counters.
+     */
+    public static GunshotPublisher getPublisher() {
+        return publisher;
     }
 
 }
@@ -0,0 +1,240 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.api.model.Device;
+import com.hugovs.gls.receiver.api.model.LocatedGunshot;
+import com.hugovs.gls.receiver.util.GeoUtils;
+import com.hugovs.gls.receiver.util.TdoaSolver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Groups the gunshots detected by nearby devices into a single event and locates it.
+ *
+ * A detection joins an open event when its device is within {@code maxDistance} meters of every device of the event
+ * and the difference between its timestamp and each of theirs is physically possible for that distance, plus a
+ * {@code tolerance} for the clocks, so the devices of an event are never farther apart than {@code maxDistance}. Repeated detections of a device already in the event keep the earliest one.
+ * Events are indexed in buckets of the time the sound takes to cross {@code maxDistance}, so a detection is
+ * compared only with the events of its own bucket and the two adjacent ones.
+ *
+ * An event is closed {@code maxDistance / speed + grace} after its first detection was received, then located by a
+ * {@link TdoaSolver} and handed to the listener. Only events heard by at least two devices are located: a single
+ * device tells nothing about the source. With two or three devices the system is underdetermined and the location
+ * is marked as approximate; from four devices on, the residual error of the fit is given as well. The precision of the location is bounded by the resolution of the
+ * timestamps sent by the devices.
+ *
+ * Not thread-safe: it is meant to be used by the {@link GunshotPublisher} thread.
+ *
+ * @author Hugo Sartori
+ */
+public class GunshotCorrelator {
+
+    public static final double DEFAULT_MAX_DISTANCE = 2000;
+    public static final long DEFAULT_TOLERANCE = 50;
+    public static final long DEFAULT_GRACE = 500;
+
+    private static final int SLOTS = 8;
+
+    private final double maxDistance;
+    private final long tolerance;
+    private final long window;
+    private final long lifetime;
+    private final TdoaSolver solver = new TdoaSolver();
+    private final Consumer<LocatedGunshot> listener;
+
+    // Time-bucketed index of the open events: slot = bucket % SLOTS
+    private final long[] slotBuckets = new long[SLOTS];
+    private final List<List<Event>> slots = new ArrayList<>(SLOTS);
+    private final ArrayDeque<Event> open = new ArrayDeque<>();
+
+    // Reused by the solver
+    private double[] latitudes = new double[8], longitudes = new double[8], times = new double[8];
+
+    private long located;
+
+    /**
+     * Creates an {@link GunshotCorrelator} instance with the default distance, tolerance and grace.
+     *
+     * @param listener: the listener of the located gunshots.
+     */
+    public GunshotCorrelator(Consumer<LocatedGunshot> listener) {
+        this(DEFAULT_MAX_DISTANCE, DEFAULT_TOLERANCE, DEFAULT_GRACE, listener);
+    }
+
+    /**
+     * Creates an {@link GunshotCorrelator} instance.
+     *
+     * @param maxDistance: the maximum distance between devices that hear the same gunshot, in meters.
+     * @param tolerance:   the tolerance of the timestamps of the devices, in milliseconds.
+     * @param grace:       the time to wait for late detections after the sound could have reached every device.
+     * @param listener:    the listener of the located gunshots.
+     */
+    public GunshotCorrelator(double maxDistance, long tolerance, long grace, Consumer<LocatedGunshot> listener) {
+        this.maxDistance = maxDistance;
+        this.tolerance = tolerance;
+        this.window = Math.max(1, (long) Math.ceil(maxDistance / TdoaSolver.SPEED_OF_SOUND * 1000)) + tolerance;
+        this.lifetime = window + grace;
+        this.listener = listener;
+        for (int i = 0; i < SLOTS; i++) {
+            slotBuckets[i] = Long.MIN_VALUE;
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Add a detection, joining it to an open event or opening a new one.
+     *
+     * @param device:    the device that detected the gunshot.
+     * @param timestamp: the timestamp of the detection, in milliseconds.
+     * @param now:       the current time, in milliseconds.
+     */
+    public void add(Device device, long timestamp, long now) {
+        final long bucket = Math.floorDiv(timestamp, window);
+
+        Event match = null;
+        for (long b = bucket - 1; b <= bucket + 1; b++) {
+            final int slot = (int) Math.floorMod(b, SLOTS);
+            if (slotBuckets[slot] != b) continue;
+            for (final Event event : slots.get(slot)) {
+                if (event.accepts(device, timestamp) && (match == null || event.first < match.first))
+                    match = event;
+            }
+        }
+
+        if (match != null) {
+            match.add(device, timestamp);
+            return;
+        }
+
+        final Event event = new Event(device, timestamp, bucket, now + lifetime);
+        final int slot = (int) Math.floorMod(bucket, SLOTS);
+        if (slotBuckets[slot] != bucket) {
+            // The previous bucket of the slot is too old to match; its events are still closed from the open queue
+            slotBuckets[slot] = bucket;
+            slots.get(slot).clear();
+        }
+        slots.get(slot).add(event);
+        open.add(event);
+    }
+
+    /**
+     * Close and locate the events whose time is over.
+     *
+     * @param now: the current time, in milliseconds.
+     */
+    public void poll(long now) {
+        while (!open.isEmpty() && open.peek().deadline <= now)
+            close(open.poll());
+    }
+
+    /**
+     * Close and locate every open event.
+     */
+    public void flush() {
+        while (!open.isEmpty())
+            close(open.poll());
+    }
+
+    /**
+     * @return the time when the next event is closed, or {@link Long#MAX_VALUE} if there is no open event.
+     */
+    public long getNextDeadline() {
+        return open.isEmpty() ? Long.MAX_VALUE : open.peek().deadline;
+    }
+
+    /**
+     * @return the amount of open events.
+     */
+    public int getOpenEvents() {
+        return open.size();
+    }
+
+    /**
+     * @return the amount of located gunshots.
+     */
+    public long getLocated() {
+        return located;
+    }
+
+    private void close(Event event) {
+        final int slot = (int) Math.floorMod(event.bucket, SLOTS);
+        if (slotBuckets[slot] == event.bucket) slots.get(slot).remove(event);
+
+        final int count = event.count;
+        if (count < 2) return;
+        if (latitudes.length < count) {
+            latitudes = new double[count];
+            longitudes = new double[count];
+            times = new double[count];
+        }
+        final long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = event.devices[i].id;
+            latitudes[i] = event.devices[i].latitude;
+            longitudes[i] = event.devices[i].longitude;
+            times[i] = (event.timestamps[i] - event.first) / 1000.0;
+        }
+        solver.solve(latitudes, longitudes, times, count);
+
+        located++;
+        listener.accept(new LocatedGunshot(
+                event.first + Math.round(solver.getTime() * 1000),
+                solver.getLatitude(),
+                solver.getLongitude(),
+                count >= 4 ? solver.getError() : null,
+                count < 4,
+                ids));
+    }
+
+    /**
+     * The detections of a single gunshot.
+     */
+    private final class Event {
+
+        private final long bucket;
+        private final long deadline;
+        private final long first;
+        private Device[] devices = new Device[4];
+        private long[] timestamps = new long[4];
+        private int count;
+
+        Event(Device device, long timestamp, long bucket, long deadline) {
+            this.first = timestamp;
+            this.bucket = bucket;
+            this.deadline = deadline;
+            add(device, timestamp);
+        }
+
+        boolean accepts(Device device, long timestamp) {
+            for (int i = 0; i < count; i++)
+                if (devices[i].id == device.id) return Math.abs(timestamp - timestamps[i]) <= window;
+            for (int i = 0; i < count; i++) {
+                final double distance = GeoUtils.distance(devices[i].latitude, devices[i].longitude, device.latitude, device.longitude);
+                if (distance > maxDistance) return false;
+                if (Math.abs(timestamp - timestamps[i]) > distance / TdoaSolver.SPEED_OF_SOUND * 1000 + tolerance) return false;
+            }
+            return true;
+        }
+
+        void add(Device device, long timestamp) {
+            for (int i = 0; i < count; i++) {
+                if (devices[i].id == device.id) {
+                    timestamps[i] = Math.min(timestamps[i], timestamp);
+                    return;
+                }
+            }
+            if (count == devices.length) {
+                devices = Arrays.copyOf(devices, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+            }
+            devices[count] = device;
+            timestamps[count] = timestamp;
+            count++;
+        }
+
+    }
+
+}
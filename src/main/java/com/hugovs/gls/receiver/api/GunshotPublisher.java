@@ -0,0 +1,295 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.api.model.Device;
+import com.hugovs.gls.receiver.api.model.Frequency;
+import com.hugovs.gls.receiver.api.model.Gunshot;
+import com.hugovs.gls.receiver.api.model.LocatedGunshot;
+import com.hugovs.gls.receiver.metrics.Histogram;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import com.hugovs.gls.receiver.util.LongHashMap;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+
+/**
+ * Publishes frequencies and gunshots to the {@link GunshotAPI} from a dedicated thread, so a slow client never backs
+ * up the audio processing.
+ *
+ * Frequencies are coalesced per device: if a device sends a new frame before the previous one is published, only
+ * the latest is kept. At most {@code maxDevices} devices can have a pending frame; frames from other devices are
+ * dropped until the queue is drained. Gunshots are never coalesced nor dropped, and are published before any
+ * pending frequency.
+ *
+ * Gunshots of registered devices are also correlated by a {@link GunshotCorrelator}, and the located events are
+ * published as they close.
+ *
+ * @author Hugo Sartori
+ */
+public class GunshotPublisher {
+
+    private static final Logger log = Logger.getLogger(GunshotPublisher.class);
+
+    public static final int DEFAULT_MAX_DEVICES = 1024;
+
+    private final GunshotAPI api;
+    private final int maxDevices;
+    private final Thread thread;
+    private final GunshotCorrelator correlator;
+    private final Histogram publishLatency = Metrics.stage("publish");
+
+    // Guarded by lock
+    private final Object lock = new Object();
+    private final ArrayDeque<Gunshot> gunshots = new ArrayDeque<>();
+    private final ArrayDeque<FrequencyFrame> pendingFrames;
+    private final LongHashMap<FrequencyFrame> frames;
+    private boolean running = true;
+
+    // Counters
+    private volatile long publishedFrequencies;
+    private volatile long publishedGunshots;
+    private volatile long publishedLocatedGunshots;
+    private volatile long coalescedFrequencies;
+    private volatile long droppedFrequencies;
+
+    /**
+     * Creates an {@link GunshotPublisher} instance.
+     *
+     * @param api:        the API to publish to.
+     * @param maxDevices: the maximum amount of devices with a pending frequency frame.
+     */
+    public GunshotPublisher(final GunshotAPI api, final int maxDevices) {
+        this.api = api;
+        this.maxDevices = maxDevices;
+        this.pendingFrames = new ArrayDeque<>(maxDevices);
+        this.frames = new LongHashMap<>(maxDevices);
+        this.correlator = new GunshotCorrelator(this::publishLocated);
+        this.thread = new Thread(this::run, "gunshot-publisher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the publisher thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop the publisher thread, publishing the pending gunshots and correlated events first.
+     */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Enqueue a frequency frame, replacing the pending frame of the same device.
+     * The values are copied, so the caller can reuse its array.
+     *
+     * @param frequency: the extracted {@link Frequency}.
+     */
+    public void publish(final Frequency frequency) {
+        synchronized (lock) {
+            FrequencyFrame frame = frames.get(frequency.deviceId);
+            if (frame == null) {
+                if (frames.size() >= maxDevices) {
+                    // Forget the devices without a pending frame, which are not in the queue
+                    frames.clear();
+                    for (final FrequencyFrame pending : pendingFrames)
+                        frames.put(pending.deviceId, pending);
+                    if (frames.size() >= maxDevices) {
+                        droppedFrequencies++;
+                        return;
+                    }
+                }
+                frame = new FrequencyFrame(frequency.deviceId);
+                frames.put(frequency.deviceId, frame);
+            }
+
+            frame.set(frequency.timestamp, frequency.values);
+            frame.receivedAt = frequency.receivedAt;
+            if (frame.pending) {
+                coalescedFrequencies++;
+            } else {
+                frame.pending = true;
+                pendingFrames.add(frame);
+                lock.notify();
+            }
+        }
+    }
+
+    /**
+     * Enqueue a gunshot. Gunshots are never dropped.
+     *
+     * @param gunshot: the registered {@link Gunshot}.
+     */
+    public void publish(final Gunshot gunshot) {
+        synchronized (lock) {
+            gunshots.add(gunshot);
+            lock.notify();
+        }
+    }
+
+    private void run() {
+        double[] values = new double[0];
+        while (true) {
+            Gunshot gunshot = null;
+            boolean frequency = false, stopping = false;
+            long deviceId = 0, timestamp = 0, receivedAt = 0;
+            int length = 0;
+
+            synchronized (lock) {
+                while (running && gunshots.isEmpty() && pendingFrames.isEmpty()) {
+                    final long deadline = correlator.getNextDeadline();
+                    final long timeout = deadline == Long.MAX_VALUE ? 0 : deadline - System.currentTimeMillis();
+                    if (deadline != Long.MAX_VALUE && timeout <= 0) break;
+                    try {
+                        lock.wait(timeout);
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+
+                if (!gunshots.isEmpty()) {
+                    gunshot = gunshots.poll();
+                } else if (running && !pendingFrames.isEmpty()) {
+                    final FrequencyFrame frame = pendingFrames.poll();
+                    frame.pending = false;
+                    frequency = true;
+                    deviceId = frame.deviceId;
+                    timestamp = frame.timestamp;
+                    receivedAt = frame.receivedAt;
+                    length = frame.length;
+                    if (values.length != length) values = new double[length];
+                    System.arraycopy(frame.values, 0, values, 0, length);
+                } else if (!running) {
+                    stopping = true;
+                }
+            }
+
+            try {
+                if (gunshot != null) {
+                    api.sendGunshot(gunshot.deviceId, gunshot.timestamp);
+                    publishedGunshots++;
+                    Metrics.count(Metrics.Counter.PUBLISHED_GUNSHOTS, 1);
+                    recordLatency(gunshot.deviceId, gunshot.receivedAt);
+                    final Device device = api.getDevices().get(gunshot.deviceId);
+                    if (device != null) correlator.add(device, gunshot.timestamp, System.currentTimeMillis());
+                } else if (frequency) {
+                    api.sendFrequencies(deviceId, timestamp, values);
+                    publishedFrequencies++;
+                    Metrics.count(Metrics.Counter.PUBLISHED_FREQUENCIES, 1);
+                    recordLatency(deviceId, receivedAt);
+                }
+
+                if (stopping) {
+                    correlator.flush();
+                    return;
+                }
+                correlator.poll(System.currentTimeMillis());
+            } catch (Exception e) {
+                log.error("Failed to publish", e);
+                if (stopping) return;
+            }
+        }
+    }
+
+    /**
+     * Record the latency from the read of a packet until its data was published.
+     */
+    private void recordLatency(long deviceId, long receivedAt) {
+        if (receivedAt == 0) return;
+        final long latency = System.nanoTime() - receivedAt;
+        publishLatency.record(latency);
+        Metrics.recordDevice(deviceId, latency);
+    }
+
+    private void publishLocated(LocatedGunshot gunshot) {
+        api.sendLocatedGunshot(gunshot);
+        publishedLocatedGunshots++;
+    }
+
+    /**
+     * @return the amount of gunshots and frequency frames waiting to be published.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return gunshots.size() + pendingFrames.size();
+        }
+    }
+
+    /**
+     * @return the amount of published frequency frames.
+     */
+    public long getPublishedFrequencies() {
+        return publishedFrequencies;
+    }
+
+    /**
+     * @return the amount of published gunshots.
+     */
+    public long getPublishedGunshots() {
+        return publishedGunshots;
+    }
+
+    /**
+     * @return the amount of published located gunshots.
+     */
+    public long getPublishedLocatedGunshots() {
+        return publishedLocatedGunshots;
+    }
+
+    /**
+     * @return the amount of gunshot events waiting for late detections before being located.
+     */
+    public int getOpenGunshotEvents() {
+        return correlator.getOpenEvents();
+    }
+
+    /**
+     * @return the amount of frequency frames replaced by a newer frame of the same device before being published.
+     */
+    public long getCoalescedFrequencies() {
+        return coalescedFrequencies;
+    }
+
+    /**
+     * @return the amount of frequency frames dropped because too many devices were pending.
+     */
+    public long getDroppedFrequencies() {
+        return droppedFrequencies;
+    }
+
+    /**
+     * The latest frequency frame of a device.
+     */
+    private static class FrequencyFrame {
+
+        private final long deviceId;
+        private long timestamp;
+        private long receivedAt;
+        private double[] values = new double[0];
+        private int length;
+        private boolean pending;
+
+        FrequencyFrame(long deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void set(long timestamp, double[] source) {
+            this.timestamp = timestamp;
+            if (values.length < source.length) values = new double[source.length];
+            System.arraycopy(source, 0, values, 0, source.length);
+            length = source.length;
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.hugovs.gls.receiver.api;
+
+import java.io.IOException;
+
+/**
+ * A source of spectrogram images of the devices, served by the {@link GunshotAPI}.
+ *
+ * @author Hugo Sartori
+ */
+public interface SpectrogramSource {
+
+    /**
+     * Render the latest spectrogram of a device as a PNG image.
+     *
+     * @param deviceId: the device's id.
+     * @param columns:  the amount of FFT windows to render, one per pixel column.
+     * @return the PNG image, or {@code null} if the device has no spectrogram.
+     * @throws IOException if the image could not be encoded.
+     */
+    byte[] renderPng(long deviceId, int columns) throws IOException;
+
+}
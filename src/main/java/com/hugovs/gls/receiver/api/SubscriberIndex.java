@@ -0,0 +1,103 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.util.LongHashMap;
+import org.java_websocket.WebSocket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The clients subscribed to each device of a topic, so a frame is sent by visiting only its subscribers.
+ *
+ * The index is an immutable {@link Snapshot} published through a volatile field: the clients that want every device,
+ * and a primitive map from each device id to the clients that want it. It is rebuilt from the filters of every open
+ * client whenever a client connects, disconnects or subscribes, and whenever the registered devices change the
+ * devices inside the areas.
+ *
+ * @author Hugo Sartori
+ */
+final class SubscriberIndex {
+
+    private final Function<ClientSession, TopicFilter> filterOf;
+    private volatile Snapshot snapshot = new Snapshot(new WebSocket[0], new LongHashMap<>(0));
+
+    /**
+     * Creates an empty {@link SubscriberIndex} instance.
+     *
+     * @param filterOf: the filter of the topic of a client.
+     */
+    SubscriberIndex(Function<ClientSession, TopicFilter> filterOf) {
+        this.filterOf = filterOf;
+    }
+
+    /**
+     * Rebuild the index from the filters of the given clients. Closed clients are left out.
+     *
+     * @param clients: the connected clients.
+     */
+    synchronized void rebuild(final Collection<WebSocket> clients) {
+        final List<WebSocket> all = new ArrayList<>();
+        final LongHashMap<List<WebSocket>> lists = new LongHashMap<>(64);
+        for (final WebSocket client : clients) {
+            if (!client.isOpen()) continue;
+            final TopicFilter filter = filterOf.apply(ClientSession.of(client));
+            if (filter.matchesAll()) {
+                all.add(client);
+                continue;
+            }
+            filter.forEachDevice(id -> {
+                List<WebSocket> list = lists.get(id);
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    lists.put(id, list);
+                }
+                // A device can be both listed and inside the area of the same client
+                if (list.isEmpty() || list.get(list.size() - 1) != client) list.add(client);
+            });
+        }
+
+        final LongHashMap<WebSocket[]> byDevice = new LongHashMap<>(lists.size());
+        lists.forEach((id, list) -> byDevice.put(id, list.toArray(new WebSocket[0])));
+        snapshot = new Snapshot(all.toArray(new WebSocket[0]), byDevice);
+    }
+
+    /**
+     * @return the current subscribers, to be read without locking.
+     */
+    Snapshot get() {
+        return snapshot;
+    }
+
+    /**
+     * An immutable view of the subscribers of a topic.
+     */
+    static final class Snapshot {
+
+        private static final WebSocket[] NONE = new WebSocket[0];
+
+        /** The clients that want every device. */
+        final WebSocket[] all;
+        private final LongHashMap<WebSocket[]> byDevice;
+
+        private Snapshot(WebSocket[] all, LongHashMap<WebSocket[]> byDevice) {
+            this.all = all;
+            this.byDevice = byDevice;
+        }
+
+        /**
+         * Get the clients that want only some devices, including a given one.
+         * The clients in {@link #all} are not included.
+         *
+         * @param deviceId: the device's id.
+         * @return the clients, empty if none.
+         */
+        WebSocket[] of(final long deviceId) {
+            final WebSocket[] clients = byDevice.get(deviceId);
+            return clients != null ? clients : NONE;
+        }
+
+    }
+
+}
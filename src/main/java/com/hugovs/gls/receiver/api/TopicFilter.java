@@ -0,0 +1,108 @@
+package com.hugovs.gls.receiver.api;
+
+import com.hugovs.gls.receiver.api.model.BoundingBox;
+import com.hugovs.gls.receiver.api.model.Device;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * The devices a client wants to receive from a topic.
+ *
+ * A device matches if it is in the explicit set of ids or is located inside the bounding box. A filter without
+ * ids and box matches every device. The devices inside the box are resolved when the filter is created and again
+ * whenever the registered devices change, so matching is a single set lookup. The {@link SubscriberIndex} of the
+ * {@link GunshotAPI} visits the matched devices instead, so frames are not matched client by client.
+ *
+ * @author Hugo Sartori
+ */
+public final class TopicFilter {
+
+    /** Matches every device. */
+    public static final TopicFilter ALL = new TopicFilter(true, null, null);
+    /** Matches no device. */
+    public static final TopicFilter NONE = new TopicFilter(false, null, null);
+
+    private final boolean enabled;
+    private final Set<Long> devices;
+    private final BoundingBox box;
+    private volatile Set<Long> devicesInBox = Collections.emptySet();
+
+    private TopicFilter(boolean enabled, Set<Long> devices, BoundingBox box) {
+        this.enabled = enabled;
+        this.devices = devices;
+        this.box = box;
+    }
+
+    /**
+     * Creates a filter for the given devices and area.
+     *
+     * @param devices:    the ids of the devices, or {@code null}.
+     * @param box:        the area of the devices, or {@code null}.
+     * @param registered: the registered devices, to resolve the ones inside the area.
+     * @return {@link #ALL} if neither the devices nor the area are given; a new filter otherwise.
+     */
+    public static TopicFilter of(long[] devices, BoundingBox box, Iterable<Device> registered) {
+        if (devices == null && box == null) return ALL;
+        final Set<Long> ids = new HashSet<>();
+        if (devices != null)
+            for (final long id : devices) ids.add(id);
+        final TopicFilter filter = new TopicFilter(true, ids, box);
+        filter.resolve(registered);
+        return filter;
+    }
+
+    /**
+     * Resolve the devices inside the area of this filter.
+     *
+     * @param registered: the registered devices.
+     */
+    public void resolve(Iterable<Device> registered) {
+        if (box == null) return;
+        final Set<Long> inside = new HashSet<>();
+        for (final Device device : registered)
+            if (box.contains(device.latitude, device.longitude)) inside.add(device.id);
+        devicesInBox = inside;
+    }
+
+    /**
+     * Checks if a device matches this filter.
+     *
+     * @param deviceId: the device's id.
+     * @return {@code true} if the client wants the device data.
+     */
+    public boolean matches(long deviceId) {
+        if (!enabled) return false;
+        if (devices == null) return true;
+        return devices.contains(deviceId) || devicesInBox.contains(deviceId);
+    }
+
+    /**
+     * @return {@code true} if this filter matches every device.
+     */
+    public boolean matchesAll() {
+        return enabled && devices == null;
+    }
+
+    /**
+     * Visit the devices matched by this filter: the listed ones and the ones inside the area.
+     * Nothing is visited for {@link #NONE} nor for a filter that {@link #matchesAll()}.
+     *
+     * @param visitor: the visitor of the device ids.
+     */
+    public void forEachDevice(LongConsumer visitor) {
+        if (!enabled || devices == null) return;
+        for (final long id : devices) visitor.accept(id);
+        for (final long id : devicesInBox) visitor.accept(id);
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) return "none";
+        if (devices == null) return "all";
+        return "devices=" + devices + (box != null ? ", box=" + box : "");
+    }
+
+}
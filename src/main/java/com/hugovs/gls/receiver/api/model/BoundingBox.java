@@ -0,0 +1,30 @@
+package com.hugovs.gls.receiver.api.model;
+
+import java.io.Serializable;
+
+/**
+ * Represents a geographic area between two latitudes and two longitudes.
+ *
+ * @author Hugo Sartori
+ */
+public class BoundingBox implements Serializable {
+    public double minLatitude, minLongitude;
+    public double maxLatitude, maxLongitude;
+
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox<min=(" + minLatitude + ", " + minLongitude + "), max=(" + maxLatitude + ", " + maxLongitude + ")>";
+    }
+}
@@ -19,7 +19,9 @@ public class Device implements Serializable {
 
     @Override
     public boolean equals(Object obj) {
-        return obj.equals(id);
+        if (this == obj) return true;
+        if (!(obj instanceof Device)) return false;
+        return id == ((Device) obj).id;
     }
 
 
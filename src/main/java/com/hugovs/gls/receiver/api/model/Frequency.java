@@ -9,10 +9,14 @@ import java.io.Serializable;
  */
 public class Frequency implements Serializable {
     public long deviceId;
+    public long timestamp;
     public double[] values;
+    // Not serialized: the System.nanoTime() when the packet was read, to measure the latency until it is published
+    public transient long receivedAt;
 
-    public Frequency(long deviceId, double[] values) {
+    public Frequency(long deviceId, long timestamp, double[] values) {
         this.deviceId = deviceId;
+        this.timestamp = timestamp;
         this.values = values;
     }
 }
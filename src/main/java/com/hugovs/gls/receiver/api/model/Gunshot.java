@@ -10,9 +10,18 @@ import java.io.Serializable;
 public class Gunshot implements Serializable {
     public long deviceId;
     public long timestamp;
+    public Double latitude, longitude;
+    // Not serialized: the System.nanoTime() when the packet was read, to measure the latency until it is published
+    public transient long receivedAt;
 
     public Gunshot(long deviceId, long timestamp) {
         this.deviceId = deviceId;
         this.timestamp = timestamp;
     }
+
+    public Gunshot(long deviceId, long timestamp, double latitude, double longitude) {
+        this(deviceId, timestamp);
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
 }
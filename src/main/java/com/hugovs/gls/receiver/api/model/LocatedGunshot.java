@@ -0,0 +1,29 @@
+package com.hugovs.gls.receiver.api.model;
+
+import java.io.Serializable;
+
+/**
+ * Represents a gunshot heard by two or more devices, located from the differences between its arrival times.
+ *
+ * With two or three devices the location is {@code approximate} and has no {@code error}; from four devices on the
+ * {@code error} is the residual of the fit, in meters.
+ *
+ * @author Hugo Sartori
+ */
+public class LocatedGunshot implements Serializable {
+    public long timestamp;
+    public double latitude, longitude;
+    public Double error;
+    public boolean approximate;
+    public long[] devices;
+
+    public LocatedGunshot(long timestamp, double latitude, double longitude, Double error, boolean approximate,
+                          long[] devices) {
+        this.timestamp = timestamp;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.error = error;
+        this.approximate = approximate;
+        this.devices = devices;
+    }
+}
@@ -0,0 +1,18 @@
+package com.hugovs.gls.receiver.api.model;
+
+import java.io.Serializable;
+
+/**
+ * Represents the spectrogram image of a device.
+ *
+ * @author Hugo Sartori
+ */
+public class Spectrogram implements Serializable {
+    public long deviceId;
+    public String png;
+
+    public Spectrogram(long deviceId, String png) {
+        this.deviceId = deviceId;
+        this.png = png;
+    }
+}
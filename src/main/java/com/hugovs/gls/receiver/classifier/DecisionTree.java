@@ -0,0 +1,200 @@
+package com.hugovs.gls.receiver.classifier;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A binary decision tree encoded in flat arrays.
+ *
+ * Each node is an index in the arrays: an inner node goes to {@code left} when {@code x[feature] < threshold} and to
+ * {@code right} otherwise; a leaf has {@code feature = -1} and holds the class in {@code value}.
+ *
+ * The tree is loaded from a JSON model file, so it can be retrained without changing the code:
+ * <pre>
+ * {"features": 22, "nodes": [{"feature": 1, "threshold": 0.11, "left": 1, "right": 2}, {"value": 0}, {"value": 1}]}
+ * </pre>
+ *
+ * @author Hugo Sartori
+ */
+public class DecisionTree {
+
+    private final int featureCount;
+    private final int depth;
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] left;
+    private final int[] right;
+    private final int[] value;
+
+    private DecisionTree(Model model) {
+        if (model.nodes == null || model.nodes.length == 0) throw new IllegalArgumentException("The model has no nodes");
+
+        final int size = model.nodes.length;
+        featureCount = model.features;
+        feature = new int[size];
+        threshold = new double[size];
+        left = new int[size];
+        right = new int[size];
+        value = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            final Node node = model.nodes[i];
+            if (node.feature == null) {
+                feature[i] = -1;
+                value[i] = node.value;
+                continue;
+            }
+            if (node.feature < 0 || node.feature >= featureCount)
+                throw new IllegalArgumentException("Node " + i + " uses an unknown feature: " + node.feature);
+            if (node.left <= i || node.left >= size || node.right <= i || node.right >= size)
+                throw new IllegalArgumentException("Node " + i + " has invalid children");
+            feature[i] = node.feature;
+            threshold[i] = node.threshold;
+            left[i] = node.left;
+            right[i] = node.right;
+        }
+
+        depth = depthOf(0);
+    }
+
+    /**
+     * Load a tree from a model file.
+     *
+     * @param path: the path of the model file.
+     * @return the loaded {@link DecisionTree}.
+     * @throws IOException if the file can not be read or is not a valid model.
+     */
+    public static DecisionTree load(final Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Load a tree from a model in the classpath.
+     *
+     * @param resource: the name of the resource.
+     * @return the loaded {@link DecisionTree}.
+     * @throws IOException if the resource can not be read or is not a valid model.
+     */
+    public static DecisionTree loadResource(final String resource) throws IOException {
+        final InputStream stream = DecisionTree.class.getClassLoader().getResourceAsStream(resource);
+        if (stream == null) throw new IOException("Model not found: " + resource);
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    private static DecisionTree load(final Reader reader) throws IOException {
+        try {
+            final Model model = new Gson().fromJson(reader, Model.class);
+            if (model == null) throw new IOException("Empty model");
+            return new DecisionTree(model);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            throw new IOException("Invalid model: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Classify a single feature vector.
+     *
+     * @param x: the features, with at least {@link #getFeatureCount()} elements.
+     * @return the class of the leaf reached.
+     */
+    public int classify(final double[] x) {
+        int node = 0;
+        int f;
+        while ((f = feature[node]) >= 0)
+            node = x[f] < threshold[node] ? left[node] : right[node];
+        return value[node];
+    }
+
+    /**
+     * Classify a batch of feature vectors.
+     *
+     * @param features: the feature vectors.
+     * @return the class of each vector.
+     */
+    public int[] classify(final double[][] features) {
+        final int[] out = new int[features.length];
+        classify(features, features.length, out);
+        return out;
+    }
+
+    /**
+     * Classify the first {@code count} feature vectors of a batch.
+     *
+     * The vectors go down the tree one level at a time, so each step is the same branch-free select for every vector.
+     *
+     * @param features: the feature vectors.
+     * @param count:    the amount of vectors to be classified.
+     * @param out:      the array to store the class of each vector, also used to hold the current nodes.
+     */
+    public void classify(final double[][] features, final int count, final int[] out) {
+        for (int i = 0; i < count; i++) out[i] = 0;
+
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < count; i++) {
+                final int node = out[i];
+                final int f = feature[node];
+                if (f < 0) continue;
+                out[i] = features[i][f] < threshold[node] ? left[node] : right[node];
+            }
+        }
+
+        for (int i = 0; i < count; i++) out[i] = value[out[i]];
+    }
+
+    /**
+     * @return the amount of features expected by the tree.
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * @return the amount of nodes of the tree.
+     */
+    public int getSize() {
+        return feature.length;
+    }
+
+    /**
+     * @return the amount of decisions from the root to the deepest leaf.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    private int depthOf(int node) {
+        if (feature[node] < 0) return 0;
+        return 1 + Math.max(depthOf(left[node]), depthOf(right[node]));
+    }
+
+    /**
+     * The JSON representation of the model file.
+     */
+    private static class Model {
+        int features;
+        Node[] nodes;
+    }
+
+    /**
+     * The JSON representation of a node; leaves have no {@code feature}.
+     */
+    private static class Node {
+        Integer feature;
+        double threshold;
+        int left, right;
+        int value;
+    }
+
+}
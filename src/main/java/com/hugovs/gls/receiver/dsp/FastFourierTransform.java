@@ -0,0 +1,118 @@
+package com.hugovs.gls.receiver.dsp;
+
+import org.apache.commons.math3.transform.DftNormalization;
+
+/**
+ * An in-place radix-2 Fast Fourier Transform over primitive arrays.
+ *
+ * The twiddle factors and the bit reversal permutation are computed once for the given size, so a transform does
+ * not allocate anything. The instance holds no mutable state and can be shared between threads, as long as each one
+ * transforms its own arrays.
+ *
+ * @author Hugo Sartori
+ */
+public class FastFourierTransform {
+
+    private final int size;
+    private final double scale;
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    /**
+     * Creates an {@link FastFourierTransform} instance.
+     *
+     * @param size:          the size of the transform, must be a power of two.
+     * @param normalization: the normalization applied to the forward transform, as in commons-math.
+     */
+    public FastFourierTransform(int size, DftNormalization normalization) {
+        if (size < 2 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("The size must be a power of two: " + size);
+
+        this.size = size;
+        this.scale = normalization == DftNormalization.UNITARY ? 1.0 / Math.sqrt(size) : 1.0;
+
+        // Twiddle factors: e^(-2*pi*i*k/n) for k in [0, n/2)
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            final double angle = -2 * Math.PI * k / size;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+        }
+
+        // Bit reversal permutation
+        final int bits = Integer.numberOfTrailingZeros(size);
+        reversed = new int[size];
+        for (int i = 0; i < size; i++)
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+    }
+
+    /**
+     * Apply the forward transform in place.
+     *
+     * @param re: the real part of the input and output, with {@link #getSize()} elements.
+     * @param im: the imaginary part of the input and output, with {@link #getSize()} elements.
+     */
+    public void forward(final double[] re, final double[] im) {
+        if (re.length < size || im.length < size)
+            throw new IllegalArgumentException("The arrays must have at least " + size + " elements");
+
+        // Reorder
+        for (int i = 0; i < size; i++) {
+            final int j = reversed[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        // Butterflies
+        for (int half = 1; half < size; half <<= 1) {
+            final int step = size / (half << 1);
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    final int even = start + k;
+                    final int odd = even + half;
+                    final double oddRe = re[odd] * cos[t] - im[odd] * sin[t];
+                    final double oddIm = re[odd] * sin[t] + im[odd] * cos[t];
+                    re[odd] = re[even] - oddRe;
+                    im[odd] = im[even] - oddIm;
+                    re[even] += oddRe;
+                    im[even] += oddIm;
+                }
+            }
+        }
+
+        if (scale != 1.0) {
+            for (int i = 0; i < size; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Apply the forward transform to a real signal, zero padding it to the transform size.
+     *
+     * @param signal: the real signal, with up to {@link #getSize()} elements.
+     * @param length: the amount of samples of the signal to be used.
+     * @param re:     the real part of the output.
+     * @param im:     the imaginary part of the output.
+     */
+    public void forward(final double[] signal, final int length, final double[] re, final double[] im) {
+        if (length > size) throw new IllegalArgumentException("The signal is larger than the transform");
+        System.arraycopy(signal, 0, re, 0, length);
+        for (int i = length; i < size; i++) re[i] = 0;
+        for (int i = 0; i < size; i++) im[i] = 0;
+        forward(re, im);
+    }
+
+    /**
+     * @return the size of the transform.
+     */
+    public int getSize() {
+        return size;
+    }
+
+}
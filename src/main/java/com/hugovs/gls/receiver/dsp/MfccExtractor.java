@@ -0,0 +1,159 @@
+package com.hugovs.gls.receiver.dsp;
+
+/**
+ * Extracts Mel Frequency Cepstral Coefficients (MFCC) from a magnitude spectrum.
+ *
+ * This is the same computation of a Sphinx {@code FrontEnd} made of a {@code MelFrequencyFilterBank} followed by a
+ * {@code DiscreteCosineTransform2}, but the filter bank weights and the cosine basis are computed once on creation
+ * instead of on every window. An instance keeps a scratch array, so it must not be shared between threads.
+ *
+ * @author Hugo Sartori
+ */
+public class MfccExtractor {
+
+    private static final double LOG_FLOOR = 1e-4;
+
+    private final int spectrumSize;
+    private final int filterCount;
+    private final int cepstrumSize;
+    private final int[] filterStart;
+    private final double[][] filterWeights;
+    private final double[][] cosine;
+    private final double[] melSpectrum;
+
+    /**
+     * Creates an {@link MfccExtractor} instance.
+     *
+     * @param sampleRate:   the sample rate of the audio the spectrum came from.
+     * @param spectrumSize: the amount of bins of the spectrum.
+     * @param minFreq:      the lowest frequency of the filter bank, in Hz.
+     * @param maxFreq:      the highest frequency of the filter bank, in Hz.
+     * @param filterCount:  the amount of mel filters.
+     * @param cepstrumSize: the amount of coefficients to be extracted.
+     * @throws IllegalArgumentException if the filter bank can not be built for the given parameters.
+     */
+    public MfccExtractor(double sampleRate, int spectrumSize, double minFreq, double maxFreq, int filterCount, int cepstrumSize) {
+        if (spectrumSize < 2) throw new IllegalArgumentException("The spectrum must have at least 2 bins");
+        if (filterCount < 1) throw new IllegalArgumentException("The filter count must be positive");
+
+        this.spectrumSize = spectrumSize;
+        this.filterCount = filterCount;
+        this.cepstrumSize = cepstrumSize;
+        this.filterStart = new int[filterCount];
+        this.filterWeights = new double[filterCount][];
+        this.cosine = new double[cepstrumSize][filterCount];
+        this.melSpectrum = new double[filterCount];
+
+        buildFilterBank(sampleRate / ((spectrumSize - 1) << 1), minFreq, maxFreq);
+        buildCosineBasis();
+    }
+
+    /**
+     * Extract the coefficients of a spectrum.
+     *
+     * @param spectrum: the magnitude spectrum, with the size given on creation.
+     * @param out:      the array to store the coefficients, with at least {@link #getCepstrumSize()} elements.
+     * @return the {@code out} array.
+     */
+    public double[] extract(final double[] spectrum, final double[] out) {
+        if (spectrum.length != spectrumSize)
+            throw new IllegalArgumentException("Expected " + spectrumSize + " bins, got " + spectrum.length);
+
+        // Mel filter bank followed by log
+        for (int f = 0; f < filterCount; f++) {
+            final double[] weights = filterWeights[f];
+            final int start = filterStart[f];
+            double output = 0;
+            for (int i = 0; i < weights.length && start + i < spectrumSize; i++)
+                output += spectrum[start + i] * weights[i];
+            melSpectrum[f] = Math.log(output + LOG_FLOOR);
+        }
+
+        // Discrete cosine transform
+        for (int c = 0; c < cepstrumSize; c++) {
+            final double[] basis = cosine[c];
+            double coefficient = 0;
+            for (int f = 0; f < filterCount; f++)
+                coefficient += melSpectrum[f] * basis[f];
+            out[c] = coefficient;
+        }
+
+        return out;
+    }
+
+    /**
+     * @return the amount of coefficients extracted.
+     */
+    public int getCepstrumSize() {
+        return cepstrumSize;
+    }
+
+    /**
+     * Build triangular filters equally spaced in the mel scale, with edges snapped to the spectrum bins.
+     */
+    private void buildFilterBank(double deltaFreq, double minFreq, double maxFreq) {
+        final double[] leftEdge = new double[filterCount];
+        final double[] centerFreq = new double[filterCount];
+        final double[] rightEdge = new double[filterCount];
+
+        final double minFreqMel = linToMel(minFreq);
+        final double deltaFreqMel = (linToMel(maxFreq) - minFreqMel) / (filterCount + 1);
+
+        leftEdge[0] = nearestBin(minFreq, deltaFreq);
+        double nextEdgeMel = minFreqMel;
+        for (int i = 0; i < filterCount; i++) {
+            nextEdgeMel += deltaFreqMel;
+            centerFreq[i] = nearestBin(melToLin(nextEdgeMel), deltaFreq);
+            if (i > 0) rightEdge[i - 1] = centerFreq[i];
+            if (i < filterCount - 1) leftEdge[i + 1] = centerFreq[i];
+        }
+        nextEdgeMel += deltaFreqMel;
+        rightEdge[filterCount - 1] = nearestBin(melToLin(nextEdgeMel), deltaFreq);
+
+        for (int i = 0; i < filterCount; i++) {
+            final double left = leftEdge[i], center = centerFreq[i], right = rightEdge[i];
+            if (Math.round(right - left) == 0 || Math.round(center - left) == 0 || Math.round(right - center) == 0)
+                throw new IllegalArgumentException("The spectrum resolution of " + deltaFreq + " Hz is too low for " + filterCount + " filters");
+
+            final double initialFreq = center > left ? nearestBin(left, deltaFreq) : nearestBin(left + deltaFreq, deltaFreq);
+            final double height = 2.0 / (right - left);
+            final double leftSlope = height / (center - left);
+            final double rightSlope = height / (center - right);
+
+            final double[] weights = new double[(int) Math.round((right - left) / deltaFreq + 1)];
+            int index = 0;
+            for (double freq = initialFreq; freq <= right && index < weights.length; freq += deltaFreq, index++)
+                weights[index] = freq < center ? leftSlope * (freq - left) : height + rightSlope * (freq - center);
+
+            filterStart[i] = (int) Math.round(initialFreq / deltaFreq);
+            filterWeights[i] = weights;
+        }
+    }
+
+    /**
+     * Build the orthonormal DCT-II basis.
+     */
+    private void buildCosineBasis() {
+        final double period = 2.0 * filterCount;
+        final double scaleFirst = Math.sqrt(1.0 / filterCount);
+        final double scaleOthers = Math.sqrt(2.0 / filterCount);
+        for (int c = 0; c < cepstrumSize; c++) {
+            final double frequency = 2 * Math.PI * c / period;
+            for (int f = 0; f < filterCount; f++)
+                cosine[c][f] = Math.cos(frequency * (f + 0.5)) * (c == 0 ? scaleFirst : scaleOthers);
+        }
+    }
+
+    private static double linToMel(double freq) {
+        return 2595.0 * Math.log10(1.0 + freq / 700.0);
+    }
+
+    private static double melToLin(double mel) {
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+
+    private static double nearestBin(double freq, double deltaFreq) {
+        return deltaFreq * Math.round(freq / deltaFreq);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.hugovs.gls.receiver.dsp;
+
+/**
+ * A running estimate of the background level of a signal statistic, kept in constant state.
+ *
+ * The estimate is an asymmetric exponential moving average: it falls quickly towards quieter values and rises slowly
+ * towards louder ones, so a short impulse barely moves it while a lasting change of the background is followed
+ * within the rise time. Not thread-safe.
+ *
+ * @author Hugo Sartori
+ */
+public class NoiseFloor {
+
+    private final double rise;
+    private final double fall;
+    private double level;
+    private long updates;
+
+    /**
+     * Creates a {@link NoiseFloor} instance.
+     *
+     * @param riseUpdates: the time constant, in updates, to follow a louder background.
+     * @param fallUpdates: the time constant, in updates, to follow a quieter background.
+     */
+    public NoiseFloor(double riseUpdates, double fallUpdates) {
+        if (riseUpdates < 1 || fallUpdates < 1) throw new IllegalArgumentException("The time constants must be at least one update");
+        this.rise = 1 / riseUpdates;
+        this.fall = 1 / fallUpdates;
+    }
+
+    /**
+     * Update the estimate with a new value.
+     *
+     * @param value: the value of the statistic.
+     */
+    public void update(double value) {
+        if (updates++ == 0) level = value;
+        else level += (value < level ? fall : rise) * (value - level);
+    }
+
+    /**
+     * @return the estimated background level.
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the amount of values seen.
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.hugovs.gls.receiver.dsp;
+
+/**
+ * A reusable buffer of normalized samples decoded from an {@link com.hugovs.gls.core.AudioData}.
+ *
+ * Only the first {@link #getLength()} samples are valid, the array may be larger.
+ *
+ * @author Hugo Sartori
+ */
+public class PcmBuffer {
+
+    private double[] samples = new double[0];
+    private int length;
+
+    /**
+     * Decode the given bytes to this buffer, growing it when needed.
+     *
+     * @param decoder: the decoder of the bytes.
+     * @param bytes:   the PCM bytes.
+     */
+    public void decode(final PcmDecoder decoder, final byte[] bytes) {
+        final int count = decoder.getSampleCount(bytes.length);
+        if (samples.length < count) samples = new double[count];
+        length = decoder.decode(bytes, samples);
+    }
+
+    /**
+     * @return the samples, in the range [-1, 1).
+     */
+    public double[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the amount of valid samples.
+     */
+    public int getLength() {
+        return length;
+    }
+
+}
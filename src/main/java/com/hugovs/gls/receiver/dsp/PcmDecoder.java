@@ -0,0 +1,87 @@
+package com.hugovs.gls.receiver.dsp;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Decodes integer PCM bytes to normalized samples in the range [-1, 1).
+ *
+ * The sample size, endianness and signedness are taken from an {@link AudioFormat}. Only the first channel of each
+ * frame is decoded.
+ *
+ * @author Hugo Sartori
+ */
+public class PcmDecoder {
+
+    private final int bytesPerSample;
+    private final int frameSize;
+    private final boolean bigEndian;
+    private final boolean signed;
+    private final double scale;
+
+    /**
+     * Creates an {@link PcmDecoder} instance.
+     *
+     * @param format: the format of the bytes to be decoded.
+     * @throws IllegalArgumentException if the format is not 8, 16, 24 or 32 bits integer PCM.
+     */
+    public PcmDecoder(final AudioFormat format) {
+        final int sampleSize = format.getSampleSizeInBits();
+        if (sampleSize % 8 != 0 || sampleSize < 8 || sampleSize > 32)
+            throw new IllegalArgumentException("Unsupported sample size: " + sampleSize + " bits");
+
+        final AudioFormat.Encoding encoding = format.getEncoding();
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && !AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding))
+            throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+
+        bytesPerSample = sampleSize / 8;
+        frameSize = bytesPerSample * Math.max(1, format.getChannels());
+        bigEndian = format.isBigEndian();
+        signed = AudioFormat.Encoding.PCM_SIGNED.equals(encoding);
+        scale = 1.0 / (1L << (sampleSize - 1));
+    }
+
+    /**
+     * Decode the given bytes.
+     *
+     * @param bytes: the PCM bytes.
+     * @param out:   the array to store the samples, with at least {@link #getSampleCount(int)} elements.
+     * @return the amount of decoded samples.
+     */
+    public int decode(final byte[] bytes, final double[] out) {
+        final int count = getSampleCount(bytes.length);
+
+        // Fast path for the default format
+        if (bytesPerSample == 2 && frameSize == 2 && signed && !bigEndian) {
+            for (int i = 0, b = 0; i < count; i++, b += 2)
+                out[i] = (short) ((bytes[b + 1] << 8) | (bytes[b] & 0xff)) * scale;
+            return count;
+        }
+
+        for (int i = 0, b = 0; i < count; i++, b += frameSize) {
+            int value = 0;
+            for (int k = 0; k < bytesPerSample; k++) {
+                final int index = bigEndian ? b + k : b + bytesPerSample - 1 - k;
+                value = (value << 8) | (bytes[index] & 0xff);
+            }
+
+            // Sign extend or center the value
+            final int shift = 32 - bytesPerSample * 8;
+            if (signed) value = (value << shift) >> shift;
+            else value = ((value << shift) >>> shift) - (1 << (bytesPerSample * 8 - 1));
+
+            out[i] = value * scale;
+        }
+        return count;
+    }
+
+    /**
+     * Get the amount of samples in a given amount of bytes.
+     *
+     * @param byteCount: the amount of bytes.
+     * @return the amount of samples.
+     */
+    public int getSampleCount(int byteCount) {
+        return byteCount / frameSize;
+    }
+
+}
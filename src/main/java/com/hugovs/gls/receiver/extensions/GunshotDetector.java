@@ -3,126 +3,142 @@ package com.hugovs.gls.receiver.extensions;
 import com.hugovs.gls.core.AudioData;
 import com.hugovs.gls.core.AudioListener;
 import com.hugovs.gls.core.AudioServerExtension;
-import com.hugovs.gls.receiver.util.MathUtils;
+import com.hugovs.gls.receiver.classifier.DecisionTree;
+import com.hugovs.gls.receiver.dsp.MfccExtractor;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.DetectionSummary;
 import com.hugovs.gls.receiver.util.Property;
-import edu.cmu.sphinx.frontend.*;
-import edu.cmu.sphinx.frontend.frequencywarp.MelFrequencyFilterBank;
-import edu.cmu.sphinx.frontend.transform.DiscreteCosineTransform2;
-import org.apache.commons.math3.complex.Complex;
+import com.hugovs.gls.receiver.util.PropertyKey;
 import org.apache.log4j.Logger;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
  * AudioServerExtension to detect a gunshot given it is an impulsive sound.
  *
+ * The MFCC features of every impulsive window are classified by a {@link DecisionTree} loaded from a model file, or
+ * from the {@code gunshot-tree.json} resource when no file is given.
+ *
  * @author Hugo Sartori
  */
 public class GunshotDetector extends AudioServerExtension implements AudioListener {
 
     private static final Logger log = Logger.getLogger(GunshotDetector.class);
 
-    /**
-     * Process the data looking for gunshot sounds.
-     *
-     * @param data: the data to be processed.
-     */
-    @Override
-    public void onDataReceived(AudioData data) {
-        // Extract impulsive windows
-        List<Complex[]> subFftImpWindows;
-        try {
-            subFftImpWindows = (List<Complex[]>) data.getProperty(Property.ALAN.name());
-        } catch (Exception e) {
-            subFftImpWindows = new ArrayList<>();
-        }
+    private static final int SPECTRUM_SIZE = 20;
+    private static final double MIN_FREQ = 130, MAX_FREQ = 6800;
+    private static final int FILTERS = 4, CEPSTRUM_SIZE = 22;
 
-        // Apply gunshot detection algorithm to all impulsive windows
-        boolean isGunshot = false;
-        for (Complex[] subFftImpWindow : subFftImpWindows) {
-            boolean isWindowGunshot = isGunshot(MathUtils.abs(subFftImpWindow, true));
-            if (isWindowGunshot) log.info("Impulsive sound: GUNSHOT!");
-            else log.info("Impulsive sound: other.");
-            if (isWindowGunshot) isGunshot = true;
-        }
+    public static final String DEFAULT_MODEL = "gunshot-tree.json";
+    private static final int GUNSHOT = 1;
 
-        data.putProperty(Property.GUNSHOT.name(), isGunshot);
+    private final Path modelPath;
+    private final DetectionSummary summary = new DetectionSummary(log, DetectionSummary.DEFAULT_INTERVAL);
+    private DecisionTree tree;
+    private MfccExtractor mfccExtractor;
+    private double[][] features = new double[0][];
+    private int[] classes = new int[0];
 
+    /**
+     * Creates an {@link GunshotDetector} instance with the default model.
+     */
+    public GunshotDetector() {
+        this(null);
     }
 
     /**
-     * Checks if a given window has a gunshot sound.
+     * Creates an {@link GunshotDetector} instance.
      *
-     * @param window: the window to be checked.
-     * @return: {@code true} : if the window contains gunshot sound;
-     *          {@code false}: if it does not.
+     * @param modelPath: the path of the decision tree model file, or {@code null} to use the default model.
      */
-    private boolean isGunshot(double[] window) {
-        double[] mfccFeatures = calculateMFCC(window);
-        return decide(mfccFeatures);
+    public GunshotDetector(final Path modelPath) {
+        this.modelPath = modelPath;
     }
 
     /**
-     * Extract MFCC features from a windows.
-     *
-     * @param window: the window to extract the features.
-     * @return 22 MFCC features.
+     * Method called when the server is started.
+     * Loads the decision tree and builds the MFCC filter bank for the server sample rate.
      */
-    private double[] calculateMFCC(double[] window) {
-        final ArrayList<DataProcessor> pipeline = new ArrayList<>();
-        pipeline.add(new SingleValueAudioSource(window));
-        pipeline.add(new MelFrequencyFilterBank(130, 6800, 4));
-        pipeline.add(new DiscreteCosineTransform2(4, 22));
-        FrontEnd f = new FrontEnd(pipeline);
-
+    @Override
+    public void onServerStart() {
+        super.onServerStart();
+        try {
+            tree = modelPath != null ? DecisionTree.load(modelPath) : DecisionTree.loadResource(DEFAULT_MODEL);
+            log.info("Loaded decision tree with " + tree.getSize() + " nodes from " + (modelPath != null ? modelPath : DEFAULT_MODEL));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load the gunshot model", e);
+        }
+        if (tree.getFeatureCount() > CEPSTRUM_SIZE)
+            throw new IllegalStateException("The gunshot model expects " + tree.getFeatureCount() + " features, only " + CEPSTRUM_SIZE + " are extracted");
 
-        return ((DoubleData)f.getData()).getValues();
+        final float sampleRate = getAudioServer().getAudioFormat().getSampleRate();
+        try {
+            mfccExtractor = new MfccExtractor(sampleRate, SPECTRUM_SIZE, MIN_FREQ, MAX_FREQ, FILTERS, CEPSTRUM_SIZE);
+        } catch (IllegalArgumentException e) {
+            log.error("Unable to extract MFCC at " + sampleRate + " Hz, gunshot detection is disabled", e);
+        }
     }
 
     /**
-     * Apply a decision tree to the given MFCC features.
+     * Process the data looking for gunshot sounds.
      *
-     * @param x: a array with MFCC features (at least 22).
-     * @return {@code true}: if it is a gunshot;
-     *         {@code false}: if it is not.
+     * @param data: the data to be processed.
      */
-    private boolean decide(double[] x) {
-        return  (x[1] < 0.115742 && x[7] < 0.0202726 && x[1] >= 0.01597984 && x[13] < -0.010137) ||
-                (x[1] > 0.115742 && x[21] > 0.0678466) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] < -0.00664235) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] > 0.438763) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] > 0.438763) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] < 0.438763 && x[0] < 0.0654665) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] < 0.438763 && x[0] > 0.0654665 && x[6] < 0.242854) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] < 0.438763 && x[0] > 0.0654665 && x[6] > 0.242854 && x[2] < -0.0360553) ||
-                (x[1] > 0.115742 && x[21] < 0.0678466 && x[7] > -0.00664235 && x[1] < 0.438763 && x[0] > 0.0654665 && x[6] > 0.242854 && x[2] < -0.0360553 && x[4] > 0.0147022);
-    }
+    @Override
+    public void onDataReceived(AudioData data) {
+        final AudioProperties properties = AudioProperties.of(data);
 
-    /**
-     * A DataProcessor that is used to inject a single value into the {@link FrontEnd}.
-     */
-    private class SingleValueAudioSource extends BaseDataProcessor {
+        // Extract impulsive windows
+        final List<double[]> subFftImpWindows = properties.get(PropertyKey.ALAN);
+        if (mfccExtractor == null || subFftImpWindows == null || subFftImpWindows.isEmpty()) {
+            properties.setFlag(Property.GUNSHOT, false);
+            summary.record(data.getSourceId(), 0, 0);
+            return;
+        }
 
-        private Data data;
+        // Extract the features of all impulsive windows and classify them at once
+        final int count = subFftImpWindows.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+            calculateMFCC(subFftImpWindows.get(i), features[i]);
+        tree.classify(features, count, classes);
 
-        SingleValueAudioSource(Data data) {
-            this.data = data;
-        }
+        int gunshots = 0;
+        for (int i = 0; i < count; i++)
+            if (classes[i] == GUNSHOT) gunshots++;
+        if (log.isDebugEnabled())
+            log.debug("Device " + data.getSourceId() + ": " + gunshots + " of " + count + " impulsive windows are gunshots");
+        summary.record(data.getSourceId(), count, gunshots);
 
-        SingleValueAudioSource(double[] data) {
-            this.data = new DoubleData(data, (int) getAudioServer().getAudioFormat().getSampleRate(), 0);
-        }
+        properties.setFlag(Property.GUNSHOT, gunshots > 0);
 
-        @Override
-        public Data getData() throws DataProcessingException {
-            return data;
-        }
+    }
 
-        public void setData(Data data) {
-            this.data = data;
-        }
+    /**
+     * Extract MFCC features from a windows.
+     *
+     * @param window:   the window to extract the features.
+     * @param features: the array to store the 22 MFCC features.
+     */
+    private void calculateMFCC(double[] window, double[] features) {
+        mfccExtractor.extract(window, features);
+    }
 
+    /**
+     * Grow the reusable feature and class arrays to hold the given amount of windows.
+     *
+     * @param count: the amount of windows.
+     */
+    private void ensureCapacity(int count) {
+        if (count <= features.length) return;
+        final int capacity = Math.max(count, features.length * 2);
+        final double[][] grown = new double[capacity][];
+        System.arraycopy(features, 0, grown, 0, features.length);
+        for (int i = features.length; i < capacity; i++) grown[i] = new double[CEPSTRUM_SIZE];
+        features = grown;
+        classes = new int[capacity];
     }
 
 }
@@ -6,8 +6,9 @@ import com.hugovs.gls.core.AudioServerExtension;
 import com.hugovs.gls.receiver.api.GunshotAPIManager;
 import com.hugovs.gls.receiver.api.model.Frequency;
 import com.hugovs.gls.receiver.api.model.Gunshot;
-import com.hugovs.gls.receiver.util.MathUtils;
-import org.apache.commons.math3.complex.Complex;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+import com.hugovs.gls.receiver.util.PropertyKey;
 import org.apache.log4j.Logger;
 
 import java.util.List;
@@ -18,14 +19,20 @@ public class GunshotSender extends AudioServerExtension implements AudioListener
 
     @Override
     public void onDataReceived(AudioData data) {
-        if (data.hasProperty("FFT")) {
-            final List<Complex[]> fftWindows = (List<Complex[]>) data.getProperty("FFT");
-            final double[] first = MathUtils.abs(fftWindows.get(0), true);
-            GunshotAPIManager.sendFrequencies(new Frequency(data.getSourceId(), first));
+        final AudioProperties properties = AudioProperties.of(data);
+
+        final List<double[]> fftWindows = properties.get(PropertyKey.FFT);
+        if (fftWindows != null && !fftWindows.isEmpty()) {
+            final double[] first = fftWindows.get(0);
+            final Frequency frequency = new Frequency(data.getSourceId(), data.getTimestamp(), first);
+            frequency.receivedAt = properties.getCount(Property.RECEIVED);
+            GunshotAPIManager.sendFrequencies(frequency);
         }
 
-        if (data.hasProperty("GUNSHOT") && (boolean)data.getProperty("GUNSHOT")) {
-            GunshotAPIManager.sendGunshot(new Gunshot(data.getSourceId(), data.getTimestamp()));
+        if (properties.getFlag(Property.GUNSHOT)) {
+            final Gunshot gunshot = new Gunshot(data.getSourceId(), data.getTimestamp());
+            gunshot.receivedAt = properties.getCount(Property.RECEIVED);
+            GunshotAPIManager.sendGunshot(gunshot);
         }
 
     }
@@ -3,12 +3,15 @@ package com.hugovs.gls.receiver.extensions;
 import com.hugovs.gls.core.AudioData;
 import com.hugovs.gls.core.AudioListener;
 import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.dsp.FastFourierTransform;
+import com.hugovs.gls.receiver.dsp.NoiseFloor;
+import com.hugovs.gls.receiver.dsp.PcmBuffer;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.LongHashMap;
 import com.hugovs.gls.receiver.util.MathUtils;
 import com.hugovs.gls.receiver.util.Property;
-import org.apache.commons.math3.complex.Complex;
+import com.hugovs.gls.receiver.util.PropertyKey;
 import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
@@ -18,16 +21,85 @@ import java.util.List;
 /**
  * An {@link AudioServerExtension} to detects impulsive sound waves.
  *
+ * The windows are transformed with a reusable {@link FastFourierTransform} and their magnitudes are written to
+ * arrays owned by this detector, so no allocation is done once the arrays for the largest packet exist. The arrays
+ * are reused on the next packet: extensions that need the {@link PropertyKey#FFT} or {@link PropertyKey#ALAN} windows
+ * after their callback must copy them.
+ *
+ * By default each packet is cut in consecutive windows. In streaming mode (a positive hop size) the most recent
+ * samples of each device are kept in a ring, and a window is evaluated every {@code hopSize} samples over the last
+ * {@code windowSize} samples, so an impulse that straddles two packets is still seen in a whole window.
+ *
+ * A window is impulsive when the expectation and the variance of its magnitudes over the sub band are well above the
+ * noise floor of its device, estimated by a {@link NoiseFloor} of each statistic. The floors follow a quieter
+ * background within {@link #FALL_TIME} and a louder one within {@link #RISE_TIME}, so a noisy sensor does not flood
+ * the classifier with candidates and a quiet one still reports weaker impulses. A window updates the floors with its
+ * statistics clamped to the thresholds, so an impulse barely raises them and a following quieter shot is still
+ * detected, while a lasting louder background is followed. Until a device has been heard for {@link #FALL_TIME} the
+ * fixed thresholds are used.
+ *
+ * The state of each device (its floors and, in streaming mode, its ring) is kept in a primitive map, looked up once
+ * per packet. Beyond {@link #MAX_STREAMS} devices, the ones not heard in the last {@link #MAX_STREAMS} packets are
+ * forgotten, or the least recently heard one if every device was.
+ *
+ * The samples are read from the {@link SampleDecoder}, which must run before this extension.
+ *
  * @author Hugo Sartori
  */
 public class ImpulsiveSoundDetector extends AudioServerExtension implements AudioListener {
 
     private static final Logger log = Logger.getLogger(ImpulsiveSoundDetector.class);
-    private static final FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.UNITARY);
 
+    static final int SUB_START = 30, SUB_END = 49;
+    static final int MAX_STREAMS = 4096;
+
+    // The thresholds were tuned with the high byte of 16 bits samples, so samples are scaled to [-128, 128)
+    static final double SAMPLE_SCALE = 128;
+    static final double EXPECTATION_THRESHOLD = 0.5, VARIANCE_THRESHOLD = 0.2;
+
+    // A window must be 6 dB above the floor of its device (the variance of the magnitudes grows with their square),
+    // and never below half of the fixed thresholds' amplitude
+    static final double EXPECTATION_RATIO = 2, VARIANCE_RATIO = 4;
+    static final double MIN_EXPECTATION = EXPECTATION_THRESHOLD / EXPECTATION_RATIO;
+    static final double MIN_VARIANCE = VARIANCE_THRESHOLD / VARIANCE_RATIO;
+
+    // Time constants of the noise floors, in seconds
+    static final double RISE_TIME = 2, FALL_TIME = 0.25;
+
+    private final int hopSize;
     private int windowSize;
-    private List<Complex[]> fftWindows;
-    private List<Complex[]> subFftImpWindows;
+    private FastFourierTransform fft;
+    private double[] window;
+    private double[] re;
+    private double[] im;
+    private double riseWindows;
+    private double fallWindows;
+
+    private final List<double[]> fftWindows = new ArrayList<>();
+    private final List<double[]> subFftImpWindows = new ArrayList<>();
+    private final List<double[]> fftPool = new ArrayList<>();
+    private final List<double[]> subFftPool = new ArrayList<>();
+
+    private final LongHashMap<Stream> streams = new LongHashMap<>(64);
+    private long packets;
+
+    /**
+     * Creates an {@link ImpulsiveSoundDetector} instance that cuts each packet in consecutive windows.
+     */
+    public ImpulsiveSoundDetector() {
+        this(0);
+    }
+
+    /**
+     * Creates an {@link ImpulsiveSoundDetector} instance.
+     *
+     * @param hopSize: the amount of samples between two windows in streaming mode, or {@code 0} to cut each packet
+     *                 in consecutive windows.
+     */
+    public ImpulsiveSoundDetector(int hopSize) {
+        if (hopSize < 0) throw new IllegalArgumentException("The hop size must not be negative");
+        this.hopSize = hopSize;
+    }
 
     /**
      * Do something when the {@link com.hugovs.gls.core.AudioServer} starts.
@@ -37,8 +109,19 @@ public class ImpulsiveSoundDetector extends AudioServerExtension implements Audi
         super.onServerStart();
         windowSize = 99;
         int windowsSizePowerOfTwo = Math.max(2, 2 * Integer.highestOneBit(windowSize - 1));
+        fft = new FastFourierTransform(windowsSizePowerOfTwo, DftNormalization.UNITARY);
+        window = new double[windowSize];
+        re = new double[windowsSizePowerOfTwo];
+        im = new double[windowsSizePowerOfTwo];
+        final double windowsPerSecond = getAudioServer().getAudioFormat().getSampleRate() / (hopSize > 0 ? hopSize : windowSize);
+        riseWindows = Math.max(1, RISE_TIME * windowsPerSecond);
+        fallWindows = Math.max(1, FALL_TIME * windowsPerSecond);
         log.info("Window Size   : " + windowSize);
         log.info("Power of two  : " + windowsSizePowerOfTwo);
+        log.info("Hop size      : " + (hopSize > 0 ? hopSize : "none"));
+        log.info("Noise floor   : " + EXPECTATION_RATIO + "x expectation, " + VARIANCE_RATIO + "x variance, rise "
+                + RISE_TIME + " s, fall " + FALL_TIME + " s");
+        if (hopSize > windowSize) log.warn("The hop size is larger than the window, some samples are never analyzed");
     }
 
     /**
@@ -48,59 +131,209 @@ public class ImpulsiveSoundDetector extends AudioServerExtension implements Audi
      */
     @Override
     public void onDataReceived(AudioData data) {
+        final PcmBuffer pcm = SampleDecoder.samplesOf(data);
+        fftWindows.clear();
+        subFftImpWindows.clear();
+
+        final Stream stream = streamOf(data.getSourceId());
+        if (hopSize > 0) extractStreamWindows(stream, pcm.getSamples(), pcm.getLength());
+        else extractWindows(stream, pcm.getSamples(), pcm.getLength());
+
+        final AudioProperties properties = AudioProperties.of(data);
+        properties.put(PropertyKey.FFT, fftWindows);
+        properties.put(PropertyKey.ALAN, subFftImpWindows);
+        properties.setCount(Property.WINDOWS, fftWindows.size());
+        properties.setCount(Property.IMPULSIVE, subFftImpWindows.size());
+    }
+
+    /**
+     * Get the state of a device, creating it if needed.
+     *
+     * @param sourceId: the device's id.
+     * @return the {@link Stream} of the device.
+     */
+    private Stream streamOf(final long sourceId) {
+        Stream stream = streams.get(sourceId);
+        if (stream == null) {
+            if (streams.size() >= MAX_STREAMS) evictIdleStreams();
+            stream = new Stream(hopSize > 0 ? windowSize : 0, riseWindows, fallWindows);
+            streams.put(sourceId, stream);
+        }
+        stream.lastSeen = ++packets;
+        return stream;
+    }
+
+    /**
+     * Forget the devices not heard in the last {@link #MAX_STREAMS} packets, or the least recently heard one if every
+     * device was.
+     */
+    private void evictIdleStreams() {
+        final long idleBefore = packets - MAX_STREAMS;
+        final long[] idle = new long[streams.size()];
+        final int[] count = {0};
+        final long[] oldest = {0, Long.MAX_VALUE};
+        streams.forEach((id, stream) -> {
+            if (stream.lastSeen <= idleBefore) idle[count[0]++] = id;
+            if (stream.lastSeen < oldest[1]) {
+                oldest[0] = id;
+                oldest[1] = stream.lastSeen;
+            }
+        });
+        if (count[0] == 0) streams.remove(oldest[0]);
+        for (int i = 0; i < count[0]; i++)
+            streams.remove(idle[i]);
+    }
+
+    /**
+     * Cut the packet in consecutive windows, zero padding the last one.
+     *
+     * @param stream:  the state of the device.
+     * @param samples: the decoded samples of the data.
+     * @param length:  the amount of samples.
+     */
+    private void extractWindows(final Stream stream, final double[] samples, final int length) {
         int pos = 0;
-        double[] window = new double[windowSize];
-        byte[] samples = data.getSamples();
-        fftWindows = new ArrayList<>();
-        subFftImpWindows = new ArrayList<>();
-
-        // Extract windows
-        for (int i = 1; i < samples.length; i += 2, pos++) {
-
-            // Process window
-            if (pos >= windowSize || i == samples.length - 1) {
-                isImpulsive(data.getTimestamp(), window);
-                pos = -1;
-                continue;
+        for (int i = 0; i < length; i++) {
+            window[pos++] = samples[i] * SAMPLE_SCALE;
+            if (pos == windowSize) {
+                isImpulsive(stream, window);
+                pos = 0;
             }
+        }
 
-            window[pos] = samples[i];
+        if (pos > 0) {
+            Arrays.fill(window, pos, windowSize, 0);
+            isImpulsive(stream, window);
         }
+    }
 
-        data.putProperty(Property.FFT.name(), fftWindows);
-        data.putProperty(Property.ALAN.name(), subFftImpWindows);
+    /**
+     * Push the packet samples to the device ring and evaluate a window every {@code hopSize} samples.
+     *
+     * @param stream:  the state of the device.
+     * @param samples: the decoded samples of the data.
+     * @param length:  the amount of samples.
+     */
+    private void extractStreamWindows(final Stream stream, final double[] samples, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (stream.push(samples[i] * SAMPLE_SCALE) && stream.sinceLastWindow >= hopSize) {
+                stream.copyTo(window);
+                isImpulsive(stream, window);
+                stream.sinceLastWindow = 0;
+            }
+        }
     }
 
     /**
      * Apply the impulsive sound algorithm.
      *
-     * @param timestamp: the timestamp of the window.
+     * @param stream: the state of the device, whose noise floors are updated with the window.
      * @param window: the window itself.
      * @return {@code true} : if the window contains an impulsive sound;
      *         {@code false}: if it does not contains an impulsive sound.
      */
-    private boolean isImpulsive(final long timestamp, final double[] window) {
-        final int start = 30, end = 49;
+    private boolean isImpulsive(final Stream stream, final double[] window) {
 
         // Apply Fourier Transform to the window
-        final double[] paddedWindow = Arrays.copyOf(window, 128);
-        final Complex[] fftWindow = fft.transform(paddedWindow, TransformType.FORWARD);
+        fft.forward(window, windowSize, re, im);
 
-        fftWindows.add(MathUtils.abs(fftWindow));
+        final double[] absFFT = take(fftPool, fftWindows.size(), fft.getSize());
+        MathUtils.abs(re, im, 0, fft.getSize(), absFFT);
+        fftWindows.add(absFFT);
 
         // Calculate statistics
-        final Complex[] subFFT = Arrays.copyOfRange(fftWindow, start, end + 1);
-        final Complex[] absFFT = MathUtils.abs(subFFT);
-        final Complex expectation = MathUtils.expectation(absFFT);
-        final Complex variance = MathUtils.variance(absFFT);
+        final double expectation = MathUtils.expectation(absFFT, SUB_START, SUB_END);
+        final double variance = MathUtils.variance(absFFT, SUB_START, SUB_END);
+
+        // Checks if it is impulsive sound, relative to the noise floor once it is known
+        final double expectationThreshold = Math.max(MIN_EXPECTATION, EXPECTATION_RATIO * stream.expectation.getLevel());
+        final double varianceThreshold = Math.max(MIN_VARIANCE, VARIANCE_RATIO * stream.variance.getLevel());
+        final boolean settled = stream.isSettled();
+        final boolean impulsive = settled
+                ? expectation > expectationThreshold && variance > varianceThreshold
+                : expectation > EXPECTATION_THRESHOLD && variance > VARIANCE_THRESHOLD;
+
+        // Once settled, an impulse raises the floors at most as much as a window at the thresholds
+        stream.expectation.update(settled ? Math.min(expectation, expectationThreshold) : expectation);
+        stream.variance.update(settled ? Math.min(variance, varianceThreshold) : variance);
 
-        // Checks if it is impulsive sound
-        if (expectation.getReal() > 0.5 && variance.getReal() > 0.2) {
+        if (impulsive) {
+            final double[] subFFT = take(subFftPool, subFftImpWindows.size(), SUB_END - SUB_START + 1);
+            System.arraycopy(absFFT, SUB_START, subFFT, 0, subFFT.length);
             subFftImpWindows.add(subFFT);
-            return true;
         }
 
-        return false;
+        return impulsive;
+
+    }
+
+    /**
+     * Take a reusable array from a pool, growing it when needed.
+     *
+     * @param pool:   the pool of arrays.
+     * @param index:  the index of the array in the pool.
+     * @param length: the length of the arrays.
+     * @return the array at the given index.
+     */
+    private static double[] take(final List<double[]> pool, final int index, final int length) {
+        if (index == pool.size()) pool.add(new double[length]);
+        return pool.get(index);
+    }
+
+    /**
+     * The state of a device: the noise floors of its sub band statistics and, in streaming mode, its most recent
+     * samples.
+     */
+    private static class Stream {
+
+        private final NoiseFloor expectation;
+        private final NoiseFloor variance;
+        private final double settleWindows;
+        private long lastSeen;
+
+        private final double[] ring;
+        private int next;
+        private int filled;
+        private int sinceLastWindow;
+
+        Stream(int size, double riseWindows, double fallWindows) {
+            ring = new double[size];
+            expectation = new NoiseFloor(riseWindows, fallWindows);
+            variance = new NoiseFloor(riseWindows, fallWindows);
+            settleWindows = fallWindows;
+        }
+
+        /**
+         * @return {@code true} if the device has been heard for long enough to trust its floors.
+         */
+        boolean isSettled() {
+            return expectation.getUpdates() >= settleWindows;
+        }
+
+        /**
+         * Push a sample to the ring, overwriting the oldest one.
+         *
+         * @param sample: the sample.
+         * @return {@code true} if the ring holds a whole window.
+         */
+        boolean push(double sample) {
+            ring[next] = sample;
+            next = next + 1 == ring.length ? 0 : next + 1;
+            if (filled < ring.length) filled++;
+            sinceLastWindow++;
+            return filled == ring.length;
+        }
+
+        /**
+         * Copy the samples from the oldest to the newest.
+         *
+         * @param window: the array to store the samples.
+         */
+        void copyTo(double[] window) {
+            final int tail = ring.length - next;
+            System.arraycopy(ring, next, window, 0, tail);
+            System.arraycopy(ring, 0, window, tail, next);
+        }
 
     }
 
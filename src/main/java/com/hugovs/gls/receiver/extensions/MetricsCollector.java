@@ -0,0 +1,32 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioListener;
+import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.metrics.Histogram;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+
+/**
+ * AudioServerExtension that counts the windows, impulsive windows and gunshots of each data, and records the time
+ * since it was read in the {@code pipeline} stage of the {@link Metrics}. It must be the last extension.
+ *
+ * @author Hugo Sartori
+ */
+public class MetricsCollector extends AudioServerExtension implements AudioListener {
+
+    private final Histogram histogram = Metrics.stage("pipeline");
+
+    @Override
+    public void onDataReceived(AudioData data) {
+        final AudioProperties properties = AudioProperties.of(data);
+        Metrics.count(Metrics.Counter.WINDOWS, properties.getCount(Property.WINDOWS));
+        Metrics.count(Metrics.Counter.IMPULSIVE_WINDOWS, properties.getCount(Property.IMPULSIVE));
+        if (properties.getFlag(Property.GUNSHOT)) Metrics.count(Metrics.Counter.GUNSHOTS, 1);
+
+        final long received = properties.getCount(Property.RECEIVED);
+        if (received != 0) histogram.record(System.nanoTime() - received);
+    }
+
+}
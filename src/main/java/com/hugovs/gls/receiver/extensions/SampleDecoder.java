@@ -0,0 +1,67 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioListener;
+import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.dsp.PcmBuffer;
+import com.hugovs.gls.receiver.dsp.PcmDecoder;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+import com.hugovs.gls.receiver.util.PropertyKey;
+import org.apache.log4j.Logger;
+
+/**
+ * AudioServerExtension to decode the received bytes once to normalized samples, following the server audio format.
+ *
+ * The samples are stored in the {@link #PCM} property as a {@link PcmBuffer}, to be read by the extensions
+ * after this one. The buffer is reused on the next data, so extensions that need the samples after their callback
+ * must copy them.
+ *
+ * @author Hugo Sartori
+ */
+public class SampleDecoder extends AudioServerExtension implements AudioListener {
+
+    private static final Logger log = Logger.getLogger(SampleDecoder.class);
+
+    /** The decoded samples of the data. */
+    public static final PropertyKey<PcmBuffer> PCM = new PropertyKey<>(Property.PCM);
+
+    private PcmDecoder decoder;
+    private final PcmBuffer buffer = new PcmBuffer();
+
+    /**
+     * Method called when the server is started.
+     * Creates the decoder for the server audio format.
+     */
+    @Override
+    public void onServerStart() {
+        super.onServerStart();
+        decoder = new PcmDecoder(getAudioServer().getAudioFormat());
+        log.info("Decoding samples as " + getAudioServer().getAudioFormat());
+    }
+
+    /**
+     * Decode the samples of the received data.
+     *
+     * @param data: the received data.
+     */
+    @Override
+    public void onDataReceived(AudioData data) {
+        buffer.decode(decoder, data.getSamples());
+        AudioProperties.of(data).put(PCM, buffer);
+    }
+
+    /**
+     * Get the decoded samples of a given data.
+     *
+     * @param data: the data.
+     * @return the {@link PcmBuffer} of the data.
+     * @throws IllegalStateException if the data was not decoded by a {@link SampleDecoder}.
+     */
+    public static PcmBuffer samplesOf(AudioData data) {
+        final PcmBuffer pcm = AudioProperties.of(data).get(PCM);
+        if (pcm == null) throw new IllegalStateException("The data was not decoded, add a SampleDecoder before this extension");
+        return pcm;
+    }
+
+}
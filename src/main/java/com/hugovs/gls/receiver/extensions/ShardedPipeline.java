@@ -0,0 +1,237 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioListener;
+import com.hugovs.gls.core.AudioServer;
+import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.input.AudioBuffer;
+import org.apache.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * AudioServerExtension to dispatch the received data to a set of shards, each one running its own chain of
+ * extensions in a dedicated thread.
+ *
+ * The shard of a data is chosen by its source id, so all the data from a device is processed in order by the same
+ * shard, while different devices are processed in parallel.
+ *
+ * Queued data keep the lease of their pooled buffer, so the queues must fit in the pool of the input: otherwise a
+ * backlog empties the pool and every packet is allocated. {@link #queueSizeFor(int, int)} sizes the queues from the
+ * pool.
+ *
+ * The chain of each shard is created by a factory. Extensions that keep state per device must be new instances on
+ * each call; thread-safe extensions (as {@link WaveDrawer} and {@link GunshotSender}) can be shared between shards.
+ *
+ * @author Hugo Sartori
+ */
+public class ShardedPipeline extends AudioServerExtension implements AudioListener {
+
+    private static final Logger log = Logger.getLogger(ShardedPipeline.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+
+    private final int shardCount;
+    private final int queueSize;
+    private final Supplier<List<AudioServerExtension>> chainFactory;
+    private final Set<AudioServerExtension> extensions = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Shard[] shards;
+
+    /**
+     * Creates an {@link ShardedPipeline} instance.
+     *
+     * @param shardCount:   the amount of shards (threads).
+     * @param chainFactory: the factory of the chain of extensions of a shard, called once per shard.
+     */
+    public ShardedPipeline(int shardCount, Supplier<List<AudioServerExtension>> chainFactory) {
+        this(shardCount, DEFAULT_QUEUE_SIZE, chainFactory);
+    }
+
+    /**
+     * Creates an {@link ShardedPipeline} instance.
+     *
+     * @param shardCount:   the amount of shards (threads).
+     * @param queueSize:    the amount of pending data per shard before the input is blocked.
+     * @param chainFactory: the factory of the chain of extensions of a shard, called once per shard.
+     */
+    public ShardedPipeline(int shardCount, int queueSize, Supplier<List<AudioServerExtension>> chainFactory) {
+        if (shardCount <= 0) throw new IllegalArgumentException("The shard count must be positive");
+        this.shardCount = shardCount;
+        this.queueSize = queueSize;
+        this.chainFactory = chainFactory;
+    }
+
+    /**
+     * Method called when the server is started.
+     * Creates the chain of every shard, starts its extensions and its thread.
+     */
+    @Override
+    public void onServerStart() {
+        super.onServerStart();
+
+        // The shard extensions are registered in a server that is never started, only to give them the same
+        // audio format of the actual server through getAudioServer()
+        final AudioFormat format = getAudioServer().getAudioFormat();
+        final AudioServer context = new AudioServer((int) format.getSampleRate(), format.getSampleSizeInBits());
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final List<AudioServerExtension> chain = chainFactory.get();
+            for (final AudioServerExtension extension : chain)
+                if (extensions.add(extension)) context.addExtension(extension);
+            shards[i] = new Shard(i, chain);
+        }
+
+        for (final AudioServerExtension extension : extensions)
+            extension.onServerStart();
+
+        for (final Shard shard : shards)
+            shard.thread.start();
+
+        log.info("Started " + shardCount + " shards with " + extensions.size() + " extensions");
+    }
+
+    /**
+     * Method called when the server is closed.
+     * Stops the shard threads and closes their extensions. The shards are only created when the server is started,
+     * so a pipeline that was never started (or failed to create every shard) closes the ones it has.
+     */
+    @Override
+    public void onServerClose() {
+        final Shard[] created = shards != null ? shards : new Shard[0];
+        for (final Shard shard : created)
+            if (shard != null) shard.thread.interrupt();
+        for (final Shard shard : created) {
+            if (shard == null) continue;
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (final AudioServerExtension extension : extensions)
+            extension.onServerClose();
+        super.onServerClose();
+    }
+
+    /**
+     * Dispatch the data to the shard of its source.
+     * Blocks if the shard queue is full, so the input slows down instead of losing data out of order.
+     *
+     * @param data: the data to be dispatched.
+     */
+    @Override
+    public void onDataReceived(AudioData data) {
+        final Shard shard = shards[shardOf(data.getSourceId())];
+        AudioBuffer.retain(data);
+        try {
+            shard.queue.put(data);
+        } catch (InterruptedException e) {
+            AudioBuffer.release(data);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the queue size of each shard that keeps every queued and processed data within a given amount of leases.
+     *
+     * @param leases:     the amount of pooled buffers that can be held by the shards.
+     * @param shardCount: the amount of shards.
+     * @return the queue size of each shard, at least {@code 1}.
+     */
+    public static int queueSizeFor(int leases, int shardCount) {
+        // Each shard also holds the data it is processing
+        return Math.max(1, leases / shardCount - 1);
+    }
+
+    /**
+     * Get the shard index of a given source.
+     *
+     * @param sourceId: the source id.
+     * @return the index of the shard.
+     */
+    int shardOf(long sourceId) {
+        final int hash = Long.hashCode(sourceId) * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    /**
+     * @return the amount of shards.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Get the amount of data waiting to be processed by a shard.
+     *
+     * @param shard: the shard index.
+     * @return the amount of pending data.
+     */
+    public int getQueueDepth(int shard) {
+        return shards[shard].queue.size();
+    }
+
+    /**
+     * Get the amount of data processed by a shard.
+     *
+     * @param shard: the shard index.
+     * @return the amount of processed data.
+     */
+    public long getProcessed(int shard) {
+        return shards[shard].processed;
+    }
+
+    /**
+     * A single threaded chain of extensions.
+     */
+    private class Shard implements Runnable {
+
+        private final BlockingQueue<AudioData> queue;
+        private final AudioListener[] listeners;
+        private final Thread thread;
+        private volatile long processed;
+
+        Shard(int index, List<AudioServerExtension> chain) {
+            final List<AudioListener> listeners = new ArrayList<>();
+            for (final AudioServerExtension extension : chain)
+                if (extension instanceof AudioListener) listeners.add((AudioListener) extension);
+            this.listeners = listeners.toArray(new AudioListener[0]);
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.thread = new Thread(this, "shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                final AudioData data;
+                try {
+                    data = queue.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                try {
+                    for (final AudioListener listener : listeners)
+                        listener.onDataReceived(data);
+                } catch (Exception e) {
+                    log.error("Failed to process data from " + data.getSourceId(), e);
+                } finally {
+                    AudioBuffer.release(data);
+                    processed++;
+                }
+            }
+        }
+
+    }
+
+}
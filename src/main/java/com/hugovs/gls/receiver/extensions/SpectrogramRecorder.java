@@ -0,0 +1,189 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioListener;
+import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.api.GunshotAPIManager;
+import com.hugovs.gls.receiver.api.SpectrogramSource;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.PropertyKey;
+import org.apache.log4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AudioServerExtension that keeps a rolling spectrogram of each device and renders it as PNG images in software,
+ * for servers without a display.
+ *
+ * Each {@link PropertyKey#FFT} window becomes a column of the ring of its device, with the magnitude of the lower
+ * half of the bins quantized to a byte on a logarithmic scale from {@link #MIN_DB} to {@link #MAX_DB}. Writing a
+ * column never locks: the ring counts the written columns, and a render discards the columns that were overwritten
+ * while it copied them. The images are served by the {@link com.hugovs.gls.receiver.api.GunshotAPI} with {@code spectrogram.fetch} messages.
+ *
+ * @author Hugo Sartori
+ */
+public class SpectrogramRecorder extends AudioServerExtension implements AudioListener, SpectrogramSource {
+
+    private static final Logger log = Logger.getLogger(SpectrogramRecorder.class);
+
+    public static final int DEFAULT_COLUMNS = 2048;
+    public static final int MAX_DEVICES = 1024;
+    public static final double MIN_DB = -40;
+    public static final double MAX_DB = 40;
+
+    private static final int[] PALETTE = palette();
+
+    private final int columns;
+    private final Map<Long, Spectrogram> spectrograms = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an {@link SpectrogramRecorder} instance that keeps {@link #DEFAULT_COLUMNS} windows of each device.
+     */
+    public SpectrogramRecorder() {
+        this(DEFAULT_COLUMNS);
+    }
+
+    /**
+     * Creates an {@link SpectrogramRecorder} instance.
+     *
+     * @param columns: the amount of FFT windows kept for each device.
+     */
+    public SpectrogramRecorder(int columns) {
+        if (columns <= 0) throw new IllegalArgumentException("The amount of columns must be positive");
+        this.columns = columns;
+    }
+
+    @Override
+    public void onServerStart() {
+        GunshotAPIManager.setSpectrogramSource(this);
+    }
+
+    @Override
+    public void onServerClose() {
+        GunshotAPIManager.setSpectrogramSource(null);
+    }
+
+    @Override
+    public void onDataReceived(AudioData data) {
+        final List<double[]> fftWindows = AudioProperties.of(data).get(PropertyKey.FFT);
+        if (fftWindows == null || fftWindows.isEmpty()) return;
+
+        Spectrogram spectrogram = spectrograms.get(data.getSourceId());
+        if (spectrogram == null) {
+            if (spectrograms.size() >= MAX_DEVICES) return;
+            spectrogram = spectrograms.computeIfAbsent(data.getSourceId(),
+                    id -> new Spectrogram(columns, fftWindows.get(0).length / 2));
+        }
+        for (final double[] window : fftWindows)
+            spectrogram.write(window);
+    }
+
+    @Override
+    public byte[] renderPng(long deviceId, int columns) throws IOException {
+        final Spectrogram spectrogram = spectrograms.get(deviceId);
+        if (spectrogram == null) return null;
+
+        final int width = Math.max(1, Math.min(columns, this.columns));
+        final byte[] levels = new byte[width * spectrogram.bins];
+        final int copied = spectrogram.read(levels, width);
+        if (copied == 0) return null;
+
+        final BufferedImage image = new BufferedImage(copied, spectrogram.bins, BufferedImage.TYPE_INT_RGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int x = 0; x < copied; x++) {
+            for (int bin = 0; bin < spectrogram.bins; bin++) {
+                // Lower frequencies at the bottom
+                final int y = spectrogram.bins - 1 - bin;
+                pixels[y * copied + x] = PALETTE[levels[x * spectrogram.bins + bin] & 0xFF];
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A black-blue-red-yellow-white gradient for the 256 levels.
+     */
+    private static int[] palette() {
+        final float[][] stops = {{0, 0, 0}, {0, 0, 0.5f}, {0.8f, 0, 0.3f}, {1, 0.6f, 0}, {1, 1, 1}};
+        final int[] palette = new int[256];
+        for (int i = 0; i < 256; i++) {
+            final float position = i / 255f * (stops.length - 1);
+            final int stop = Math.min(stops.length - 2, (int) position);
+            final float t = position - stop;
+            int rgb = 0;
+            for (int c = 0; c < 3; c++) {
+                final float value = stops[stop][c] + (stops[stop + 1][c] - stops[stop][c]) * t;
+                rgb = (rgb << 8) | Math.round(value * 255);
+            }
+            palette[i] = rgb;
+        }
+        return palette;
+    }
+
+    /**
+     * The ring of quantized columns of a device. Written by a single thread at a time.
+     */
+    private static final class Spectrogram {
+
+        private final int capacity;
+        private final int bins;
+        private final byte[] ring;
+        private volatile long written;
+
+        Spectrogram(int capacity, int bins) {
+            this.capacity = capacity;
+            this.bins = bins;
+            this.ring = new byte[capacity * bins];
+        }
+
+        void write(double[] magnitudes) {
+            final long column = written;
+            final int offset = (int) (column % capacity) * bins;
+            final int length = Math.min(bins, magnitudes.length);
+            for (int bin = 0; bin < length; bin++)
+                ring[offset + bin] = quantize(magnitudes[bin]);
+            written = column + 1;
+        }
+
+        /**
+         * Copy the latest columns, oldest first.
+         *
+         * @return the amount of columns copied.
+         */
+        int read(byte[] levels, int width) {
+            final long end = written;
+            long start = Math.max(0, end - Math.min(width, capacity));
+            for (long column = start; column < end; column++) {
+                final int offset = (int) (column % capacity) * bins;
+                System.arraycopy(ring, offset, levels, (int) (column - start) * bins, bins);
+            }
+
+            // Drop the columns the writer may have overwritten while they were copied
+            final long overwritten = written - capacity + 1;
+            if (overwritten > start) {
+                final int skip = (int) Math.min(end - start, overwritten - start);
+                System.arraycopy(levels, skip * bins, levels, 0, (int) (end - start - skip) * bins);
+                start += skip;
+            }
+            return (int) (end - start);
+        }
+
+        private static byte quantize(double magnitude) {
+            final double db = 20 * Math.log10(magnitude + 1e-9);
+            final double level = (db - MIN_DB) / (MAX_DB - MIN_DB) * 255;
+            return (byte) Math.max(0, Math.min(255, (int) level));
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.hugovs.gls.receiver.extensions;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioListener;
+import com.hugovs.gls.core.AudioServerExtension;
+import com.hugovs.gls.receiver.metrics.Histogram;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+
+/**
+ * AudioServerExtension that records the time since the previous mark of the data in the histogram of a stage, and
+ * marks the data again. Placed after an extension, it times that extension.
+ *
+ * The data is first marked when it is read by a {@link com.hugovs.gls.receiver.input.TimedAudioInput}; data
+ * without a mark is not timed.
+ *
+ * @author Hugo Sartori
+ */
+public class StageTimer extends AudioServerExtension implements AudioListener {
+
+    private final String stage;
+    private final Histogram histogram;
+
+    /**
+     * Creates an {@link StageTimer} instance.
+     *
+     * @param stage: the name of the timed stage.
+     */
+    public StageTimer(String stage) {
+        this.stage = stage;
+        this.histogram = Metrics.stage(stage);
+    }
+
+    @Override
+    public void onDataReceived(AudioData data) {
+        final AudioProperties properties = AudioProperties.of(data);
+        final long mark = properties.getCount(Property.MARK);
+        if (mark == 0) return;
+        // The same instant ends this stage and starts the next one, so no time is lost between them
+        final long now = System.nanoTime();
+        histogram.record(now - mark);
+        properties.setCount(Property.MARK, now);
+    }
+
+    @Override
+    public String toString() {
+        return "StageTimer<" + stage + ">";
+    }
+
+}
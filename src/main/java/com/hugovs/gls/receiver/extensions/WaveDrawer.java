@@ -4,11 +4,12 @@ import com.hugovs.gls.core.AudioData;
 import com.hugovs.gls.core.AudioInput;
 import com.hugovs.gls.core.AudioListener;
 import com.hugovs.gls.core.AudioServerExtension;
-import com.hugovs.gls.core.util.SynchronizedData;
-import com.hugovs.gls.receiver.util.MathUtils;
+import com.hugovs.gls.receiver.dsp.PcmBuffer;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.LongHashMap;
 import com.hugovs.gls.receiver.util.Property;
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.complex.ComplexUtils;
+import com.hugovs.gls.receiver.util.PropertyKey;
+import com.hugovs.gls.receiver.util.TripleBuffer;
 import org.apache.log4j.Logger;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFWErrorCallback;
@@ -17,8 +18,11 @@ import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
@@ -27,7 +31,13 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
 /**
- * AudioServerExtension to show the received audio data as sound waves graphically.
+ * AudioServerExtension to show the received audio data as sound waves graphically, in a grid with a cell for each
+ * of the first {@link #MAX_DEVICES} devices (see {@link WaveRenderer}).
+ *
+ * The decoded samples and the first and last FFT windows of each packet are copied to a {@link Frame} of the
+ * {@link TripleBuffer} of its device, so the render thread never reads buffers the audio threads are reusing, and
+ * the audio threads never block nor allocate once the frames are large enough. If several threads deliver packets,
+ * a packet that arrives while another is being copied is not shown.
  *
  * @author Hugo Sartori
  */
@@ -35,18 +45,64 @@ public class WaveDrawer extends AudioServerExtension implements AudioListener {
 
     private static final Logger log = Logger.getLogger(WaveDrawer.class);
 
+    public static final int MAX_DEVICES = 64;
+
     private Thread renderContextThread;
-    private SynchronizedData<AudioData> dataToRender = new SynchronizedData<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    // Written only while holding the writing flag
+    private final LongHashMap<TripleBuffer<Frame>> framesByDevice = new LongHashMap<>(MAX_DEVICES);
+    // Copied on write, read by the render thread
+    private volatile List<TripleBuffer<Frame>> devices = Collections.emptyList();
 
     /**
      * Method called when data is received from the default {@link AudioInput}.
-     * Also updates the {@code dataToRender} field to be copied from the render thread.
+     * Also copies the data to be drawn to the back frame and publishes it to the render thread.
      *
      * @param audioData: the {@link AudioData} received from the {@link AudioInput}.
      */
     @Override
     public void onDataReceived(AudioData audioData) {
-        dataToRender.setData(audioData);
+        if (!writing.compareAndSet(false, true)) return;
+        try {
+            TripleBuffer<Frame> frames = framesByDevice.get(audioData.getSourceId());
+            if (frames == null) {
+                if (framesByDevice.size() >= MAX_DEVICES) return;
+                frames = new TripleBuffer<>(Frame::new);
+                framesByDevice.put(audioData.getSourceId(), frames);
+                final List<TripleBuffer<Frame>> grown = new ArrayList<>(devices);
+                grown.add(frames);
+                devices = Collections.unmodifiableList(grown);
+            }
+
+            final Frame frame = frames.back();
+            final PcmBuffer pcm = SampleDecoder.samplesOf(audioData);
+            frame.samples = ensureCapacity(frame.samples, pcm.getLength());
+            frame.samplesLength = pcm.getLength();
+            System.arraycopy(pcm.getSamples(), 0, frame.samples, 0, frame.samplesLength);
+
+            final AudioProperties properties = AudioProperties.of(audioData);
+            final List<double[]> fftWindows = properties.get(PropertyKey.FFT);
+            if (fftWindows != null && !fftWindows.isEmpty()) {
+                final double[] first = fftWindows.get(0);
+                final double[] last = fftWindows.get(fftWindows.size() - 1);
+                frame.fftLength = first.length;
+                frame.firstFft = ensureCapacity(frame.firstFft, first.length);
+                frame.lastFft = ensureCapacity(frame.lastFft, first.length);
+                System.arraycopy(first, 0, frame.firstFft, 0, first.length);
+                System.arraycopy(last, 0, frame.lastFft, 0, first.length);
+            } else {
+                frame.fftLength = 0;
+            }
+
+            frame.bip = properties.getFlag(Property.BIP);
+            frames.publish();
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    private static double[] ensureCapacity(double[] array, int length) {
+        return array.length >= length ? array : new double[length];
     }
 
     /**
@@ -74,7 +130,8 @@ public class WaveDrawer extends AudioServerExtension implements AudioListener {
     // ============================================================================================================== //
 
     private long window;
-    private boolean lastBip = false;
+    private WaveRenderer renderer;
+    private Frame[] renderFrames = new Frame[0];
 
     private void run() {
         log.info("Initializing WaveDrawer with LWJGL " + Version.getVersion() + ".");
@@ -158,7 +215,7 @@ public class WaveDrawer extends AudioServerExtension implements AudioListener {
         double lastTime = glfwGetTime();
         log.info("Inside loop");
 
-        glEnableClientState(GL_VERTEX_ARRAY);
+        renderer = new WaveRenderer();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
@@ -178,78 +235,31 @@ public class WaveDrawer extends AudioServerExtension implements AudioListener {
             //syncFramerate.sync(120);
         }
 
-        glDisableClientState(GL_VERTEX_ARRAY);
+        renderer.dispose();
     }
 
     private void render(double deltaTime) {
 
-        // Draw wave
-        AudioData data = dataToRender.getData();
-        if (data == null) return;
-
-        byte[] samples = data.getSamples();
-
-        Object bipObj = data.getProperty("Bip");
-        boolean bip = bipObj != null ? (Boolean) bipObj : false;
-        if (bip != lastBip) {
-            if (bip) glColor3f(1.0f, 0.0f, 0.0f);
-            else glColor3f(1.0f, 1.0f, 1.0f);
-            lastBip = bip;
-        }
-
-        glBegin(GL_LINE_LOOP);
-        int length = samples.length;
-        glVertex2d(-2, 2);
-        for (int i = 1; i < length; i += 2) {
-            byte b = samples[i];
-            float x = (((float) i) / ((float) length)) * 2f - 1f;
-            float y = (((float) b) / (127f));
-            glVertex2d(x, y);
-        }
-        glVertex2d(2, 2);
-        glEnd();
+        // Take the most recent frame of each device, keeping the last one if nothing new arrived
+        final List<TripleBuffer<Frame>> devices = this.devices;
+        if (renderFrames.length < devices.size()) renderFrames = new Frame[devices.size()];
+        for (int i = 0; i < devices.size(); i++)
+            renderFrames[i] = devices.get(i).front();
 
-        if (data.hasProperty(Property.FFT.name()))
-            renderWindow(data);
+        renderer.render(renderFrames, devices.size());
 
     }
 
-    private void renderWindow(AudioData data) {
-        final List<Complex[]> fftWindows = (List<Complex[]>) data.getProperty(Property.FFT.name());
-
-        float aux = fftWindows.get(0).length * 8;
-        int k = 0;
-        float xOffset = -1f;
-
-        glColor4f(0, 1, 0, 0.1f);
-        for (final Complex complex : fftWindows.get(0)) {
-            double y = complex.abs() / 10 - 1;
-            glBegin(GL_QUADS);
-            glVertex2d(k / aux + xOffset, -1);
-            glVertex2d(k / aux + xOffset, y);
-            glVertex2d((k + 8) / aux + xOffset, y);
-            glVertex2d((k + 8) / aux + xOffset, -1);
-            glEnd();
-            k += 16;
-        }
-
-        k = 0;
-        xOffset = -1f;
-        glColor4f(0, 0, 1, 0.1f);
-        for (final Complex complex : fftWindows.get(fftWindows.size() - 1)) {
-            double y = complex.abs() / 10;
-            glBegin(GL_QUADS);
-            glVertex2d(k / aux + xOffset, 1);
-            glVertex2d(k / aux + xOffset, 1 - y);
-            glVertex2d((k + 8) / aux + xOffset, 1 - y);
-            glVertex2d((k + 8) / aux + xOffset, 1);
-            glEnd();
-            k += 16;
-        }
-
-        glColor4f(1, 1, 1, 0.5f);
-
+    /**
+     * The copy of the data of a packet to be drawn.
+     */
+    static final class Frame {
+        double[] samples = new double[0];
+        int samplesLength;
+        double[] firstFft = new double[0];
+        double[] lastFft = new double[0];
+        int fftLength;
+        boolean bip;
     }
 
 }
-
@@ -0,0 +1,188 @@
+package com.hugovs.gls.receiver.extensions;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Draws the frames of the {@link WaveDrawer} in a grid with one cell per device.
+ *
+ * The vertices of every cell are written to a buffer per layer (borders, waves, alerted waves and the two spectra),
+ * streamed to a vertex buffer object and drawn with a single call per layer, so the cost of a frame does not grow
+ * with JNI calls per sample or per bin. Waves are decimated to at most {@link #MAX_WAVE_POINTS} points per cell.
+ *
+ * Must be used only by the thread that owns the OpenGL context.
+ *
+ * @author Hugo Sartori
+ */
+final class WaveRenderer {
+
+    static final int MAX_WAVE_POINTS = 1024;
+
+    private final Layer borders = new Layer(GL_LINES, 0.3f, 0.3f, 0.3f, 1);
+    private final Layer waves = new Layer(GL_LINES, 1, 1, 1, 1);
+    private final Layer alerts = new Layer(GL_LINES, 1, 0, 0, 1);
+    private final Layer firstSpectra = new Layer(GL_TRIANGLES, 0, 1, 0, 0.1f);
+    private final Layer lastSpectra = new Layer(GL_TRIANGLES, 0, 0, 1, 0.1f);
+
+    /**
+     * Draw the frames, one per cell.
+     *
+     * @param frames: the frames of the devices.
+     * @param count:  the amount of frames.
+     */
+    void render(WaveDrawer.Frame[] frames, int count) {
+        if (count == 0) return;
+        final int columns = (int) Math.ceil(Math.sqrt(count));
+        final int rows = (count + columns - 1) / columns;
+        final float width = 2f / columns;
+        final float height = 2f / rows;
+
+        borders.clear();
+        waves.clear();
+        alerts.clear();
+        firstSpectra.clear();
+        lastSpectra.clear();
+
+        for (int i = 0; i < count; i++) {
+            final float left = -1 + (i % columns) * width;
+            final float bottom = 1 - (i / columns + 1) * height;
+            if (count > 1) addBorder(left, bottom, width, height);
+            addWave(frames[i], left, bottom, width, height);
+            addSpectra(frames[i], left, bottom, width, height);
+        }
+
+        glEnableClientState(GL_VERTEX_ARRAY);
+        firstSpectra.draw();
+        lastSpectra.draw();
+        borders.draw();
+        waves.draw();
+        alerts.draw();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glDisableClientState(GL_VERTEX_ARRAY);
+    }
+
+    /**
+     * Delete the vertex buffers and free the vertex data.
+     */
+    void dispose() {
+        borders.dispose();
+        waves.dispose();
+        alerts.dispose();
+        firstSpectra.dispose();
+        lastSpectra.dispose();
+    }
+
+    private void addBorder(float left, float bottom, float width, float height) {
+        borders.line(left, bottom, left + width, bottom);
+        borders.line(left + width, bottom, left + width, bottom + height);
+    }
+
+    private void addWave(WaveDrawer.Frame frame, float left, float bottom, float width, float height) {
+        final int length = frame.samplesLength;
+        if (length < 2) return;
+        final Layer layer = frame.bip ? alerts : waves;
+        final int step = Math.max(1, (length + MAX_WAVE_POINTS - 1) / MAX_WAVE_POINTS);
+
+        float lastX = left;
+        float lastY = toCell(frame.samples[0], bottom, height);
+        for (int i = step; i < length; i += step) {
+            final float x = left + width * i / length;
+            final float y = toCell(frame.samples[i], bottom, height);
+            layer.line(lastX, lastY, x, y);
+            lastX = x;
+            lastY = y;
+        }
+    }
+
+    private void addSpectra(WaveDrawer.Frame frame, float left, float bottom, float width, float height) {
+        final int bins = frame.fftLength;
+        if (bins == 0) return;
+        final float barWidth = width / (2f * bins);
+        final float top = bottom + height;
+        for (int i = 0; i < bins; i++) {
+            final float x = left + width * i / bins;
+            final float first = (float) Math.min(2, Math.max(0, frame.firstFft[i] / 10)) / 2 * height;
+            final float last = (float) Math.min(2, Math.max(0, frame.lastFft[i] / 10)) / 2 * height;
+            firstSpectra.rectangle(x, bottom, barWidth, first);
+            lastSpectra.rectangle(x, top - last, barWidth, last);
+        }
+    }
+
+    private static float toCell(double sample, float bottom, float height) {
+        final double clamped = Math.max(-1, Math.min(1, sample));
+        return bottom + (float) (clamped + 1) / 2 * height;
+    }
+
+    /**
+     * The vertices drawn with the same mode and color, streamed to a vertex buffer object.
+     */
+    private static final class Layer {
+
+        private final int mode;
+        private final float red, green, blue, alpha;
+        private FloatBuffer vertices = MemoryUtil.memAllocFloat(4096);
+        private int vbo;
+
+        Layer(int mode, float red, float green, float blue, float alpha) {
+            this.mode = mode;
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+            this.alpha = alpha;
+        }
+
+        void clear() {
+            vertices.clear();
+        }
+
+        void line(float x1, float y1, float x2, float y2) {
+            ensureRemaining(4);
+            vertices.put(x1).put(y1).put(x2).put(y2);
+        }
+
+        void rectangle(float x, float y, float width, float height) {
+            if (height <= 0) return;
+            ensureRemaining(12);
+            vertices.put(x).put(y).put(x + width).put(y).put(x + width).put(y + height);
+            vertices.put(x).put(y).put(x + width).put(y + height).put(x).put(y + height);
+        }
+
+        void draw() {
+            final int count = vertices.position() / 2;
+            if (count == 0) return;
+            vertices.flip();
+
+            if (vbo == 0) vbo = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vbo);
+            final long bytes = (long) vertices.capacity() * Float.BYTES;
+            // Orphan the storage so the driver does not wait for the previous frame to be drawn
+            glBufferData(GL_ARRAY_BUFFER, bytes, GL_STREAM_DRAW);
+            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+
+            glVertexPointer(2, GL_FLOAT, 0, 0L);
+            glColor4f(red, green, blue, alpha);
+            glDrawArrays(mode, 0, count);
+        }
+
+        void dispose() {
+            if (vbo != 0) glDeleteBuffers(vbo);
+            vbo = 0;
+            MemoryUtil.memFree(vertices);
+        }
+
+        private void ensureRemaining(int floats) {
+            if (vertices.remaining() >= floats) return;
+            final FloatBuffer grown = MemoryUtil.memAllocFloat(Math.max(vertices.capacity() * 2, vertices.position() + floats));
+            vertices.flip();
+            grown.put(vertices);
+            MemoryUtil.memFree(vertices);
+            vertices = grown;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.hugovs.gls.receiver.input;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+import com.hugovs.gls.receiver.util.PropertyKey;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A leased buffer from an {@link AudioBufferPool}.
+ *
+ * The packet is received in the direct {@code buffer} and then exposed as an {@link AudioData} backed by the
+ * {@code array} of this lease. The content is never changed while the lease has references, so any extension that
+ * needs to keep the {@link AudioData} after its callback must {@link #retain()} it and {@link #release()} it when done.
+ *
+ * @author Hugo Sartori
+ */
+public final class AudioBuffer {
+
+    /** The pooled buffer that backs the data. */
+    public static final PropertyKey<AudioBuffer> LEASE = new PropertyKey<>(Property.LEASE);
+
+    private final AudioBufferPool pool;
+    private final ByteBuffer buffer;
+    private final byte[] array;
+    private final AtomicInteger references = new AtomicInteger();
+    private final AudioProperties properties = new AudioProperties();
+    private AudioData data;
+
+    AudioBuffer(final AudioBufferPool pool, final int capacity) {
+        this.pool = pool;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.array = new byte[capacity];
+    }
+
+    /**
+     * Get the lease attached to a given {@link AudioData}.
+     *
+     * @param data: the data to look for the lease.
+     * @return {@link AudioBuffer}: the lease that backs the data;
+     *         {@code null}       : if the data is not backed by a pooled buffer.
+     */
+    public static AudioBuffer of(final AudioData data) {
+        final AudioProperties properties = AudioProperties.find(data);
+        return properties != null ? properties.get(LEASE) : null;
+    }
+
+    /**
+     * Retain the {@link AudioData} of a given lease, if any.
+     *
+     * @param data: the data to be retained.
+     */
+    public static void retain(final AudioData data) {
+        final AudioBuffer lease = data != null ? of(data) : null;
+        if (lease != null) lease.retain();
+    }
+
+    /**
+     * Release the {@link AudioData} of a given lease, if any.
+     *
+     * @param data: the data to be released.
+     */
+    public static void release(final AudioData data) {
+        final AudioBuffer lease = data != null ? of(data) : null;
+        if (lease != null) lease.release();
+    }
+
+    /**
+     * Add a reference to this lease.
+     */
+    public void retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) throw new IllegalStateException("Buffer retained after being released");
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    /**
+     * Remove a reference from this lease, returning it to the pool when no reference is left.
+     */
+    public void release() {
+        final int left = references.decrementAndGet();
+        if (left == 0) pool.recycle(this);
+        else if (left < 0) throw new IllegalStateException("Buffer released more times than retained");
+    }
+
+    /**
+     * @return the {@link AudioData} view of the received packet.
+     */
+    public AudioData getData() {
+        return data;
+    }
+
+    /**
+     * @return the direct buffer to receive the packet in.
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Mark this lease as taken from the pool.
+     */
+    void acquire() {
+        references.set(1);
+        data = null;
+        buffer.clear();
+    }
+
+    /**
+     * Copy the received packet to the backing array and create its {@link AudioData} view.
+     * The bytes after the packet length are zeroed so nothing from a previous packet leaks to this one.
+     *
+     * @return the {@link AudioData} view of the received packet.
+     */
+    AudioData publish() {
+        buffer.flip();
+        final int length = buffer.remaining();
+        buffer.get(array, 0, length);
+        if (length < array.length) Arrays.fill(array, length, array.length, (byte) 0);
+        data = AudioData.wrap(array);
+        properties.attach(data).put(LEASE, this);
+        return data;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.hugovs.gls.receiver.input;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size pool of {@link AudioBuffer}s, allocated once when the pool is created.
+ *
+ * If every buffer is leased, a new unpooled buffer is created so the input never blocks; these are counted in
+ * {@link #getMisses()} and can be used to size the pool.
+ *
+ * @author Hugo Sartori
+ */
+public class AudioBufferPool {
+
+    private static final Logger log = Logger.getLogger(AudioBufferPool.class);
+
+    private final int capacity;
+    private final ArrayBlockingQueue<AudioBuffer> free;
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates an {@link AudioBufferPool} instance.
+     *
+     * @param size:     the amount of pooled buffers.
+     * @param capacity: the capacity in bytes of each buffer.
+     */
+    public AudioBufferPool(int size, int capacity) {
+        if (size <= 0) throw new IllegalArgumentException("The pool size must be positive");
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++)
+            free.add(new AudioBuffer(this, capacity));
+    }
+
+    /**
+     * Take a buffer from the pool.
+     *
+     * @return a {@link AudioBuffer} with a single reference.
+     */
+    public AudioBuffer acquire() {
+        AudioBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (misses.getAndIncrement() == 0) log.warn("Buffer pool exhausted, allocating unpooled buffers");
+            buffer = new AudioBuffer(this, capacity);
+        }
+        buffer.acquire();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers that do not fit anymore are left to the garbage collector.
+     *
+     * @param buffer: the buffer to be returned.
+     */
+    void recycle(final AudioBuffer buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * @return the amount of buffers available to be leased.
+     */
+    public int getAvailable() {
+        return free.size();
+    }
+
+    /**
+     * @return the amount of times the pool was empty when a buffer was requested.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
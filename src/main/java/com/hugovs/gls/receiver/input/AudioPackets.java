@@ -0,0 +1,35 @@
+package com.hugovs.gls.receiver.input;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes packets in the layout read by {@code AudioData.wrap}: a header with the source id and the timestamp, as
+ * big-endian longs, followed by the samples.
+ *
+ * @author Hugo Sartori
+ */
+public class AudioPackets {
+
+    public static final int HEADER_SIZE = 16;
+
+    private AudioPackets() {
+        //no instance
+    }
+
+    /**
+     * Write the header of a packet at the position of a buffer.
+     *
+     * @param buffer:    the buffer to write to.
+     * @param sourceId:  the id of the device that sent the packet.
+     * @param timestamp: the timestamp of the packet.
+     */
+    public static void writeHeader(ByteBuffer buffer, long sourceId, long timestamp) {
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putLong(sourceId);
+        buffer.putLong(timestamp);
+        buffer.order(order);
+    }
+
+}
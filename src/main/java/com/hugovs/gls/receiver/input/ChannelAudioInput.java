@@ -0,0 +1,279 @@
+package com.hugovs.gls.receiver.input;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioInput;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+
+/**
+ * An {@link AudioInput} implementation that receives audio from udp packets in a given port using a
+ * {@link DatagramChannel} and pooled direct buffers.
+ *
+ * Unlike {@link UdpAudioInput}, every packet has its own {@link AudioBuffer}, so the {@link AudioData} returned by
+ * {@link #read()} is not overwritten by the following packets. The reference held by this input is released on the
+ * next {@link #read()}, when the previous packet went through all the extensions.
+ *
+ * In batch mode, every datagram already queued on the socket is drained on each wakeup, so the kernel queue is
+ * emptied as fast as possible and the packets are handed to the server from the batch afterwards.
+ *
+ * With a receive timeout, {@link #read()} returns {@code null} when no packet arrives within it, so a decorating
+ * input (as the {@link JitterBufferInput}) can still do its work while no device is sending.
+ *
+ * The kernel drops, pool misses and, in batch mode, the batch sizes are logged from time to time and published in
+ * the {@link Metrics}, to size the receive buffer (SO_RCVBUF) and the pool.
+ *
+ * @author Hugo Sartori
+ */
+public class ChannelAudioInput implements AudioInput {
+
+    private static final Logger log = Logger.getLogger(ChannelAudioInput.class);
+
+    public static final int DEFAULT_POOL_SIZE = 64;
+    private static final long STATISTICS_INTERVAL = 10_000;
+
+    private final DatagramChannel channel;
+    private final AudioBufferPool pool;
+    private final KernelDropCounter dropCounter;
+    private final long receiveTimeout;
+    private AudioBuffer current;
+
+    // Batch mode and receive timeout
+    private final Selector selector;
+    private final ArrayDeque<AudioBuffer> batch;
+    private final int maxBatchSize;
+    private volatile long batches;
+    private volatile long batchedPackets;
+    private volatile int lastBatchSize;
+    private volatile int largestBatchSize;
+    private long lastStatistics = System.currentTimeMillis();
+
+    /**
+     * Creates an {@link ChannelAudioInput} instance.
+     *
+     * @param port:            the port to listen to udp packets.
+     * @param totalBufferSize: the buffer size in bytes to store received data.
+     */
+    public ChannelAudioInput(int port, int totalBufferSize) {
+        this(port, totalBufferSize, DEFAULT_POOL_SIZE, 0, false);
+    }
+
+    /**
+     * Creates an {@link ChannelAudioInput} instance.
+     *
+     * @param port:              the port to listen to udp packets.
+     * @param totalBufferSize:   the buffer size in bytes to store received data.
+     * @param poolSize:          the amount of buffers that can be leased at the same time without allocation.
+     * @param receiveBufferSize: the socket receive buffer size (SO_RCVBUF) in bytes, or {@code 0} to keep the default.
+     * @param batched:           if every queued datagram should be drained on each wakeup.
+     */
+    public ChannelAudioInput(int port, int totalBufferSize, int poolSize, int receiveBufferSize, boolean batched) {
+        this(port, totalBufferSize, poolSize, receiveBufferSize, batched, 0);
+    }
+
+    /**
+     * Creates an {@link ChannelAudioInput} instance.
+     *
+     * @param port:              the port to listen to udp packets.
+     * @param totalBufferSize:   the buffer size in bytes to store received data.
+     * @param poolSize:          the amount of buffers that can be leased at the same time without allocation.
+     * @param receiveBufferSize: the socket receive buffer size (SO_RCVBUF) in bytes, or {@code 0} to keep the default.
+     * @param batched:           if every queued datagram should be drained on each wakeup.
+     * @param receiveTimeout:    the milliseconds to wait for a packet before {@link #read()} returns {@code null}, or
+     *                           {@code 0} to wait indefinitely.
+     */
+    public ChannelAudioInput(int port, int totalBufferSize, int poolSize, int receiveBufferSize, boolean batched,
+                             long receiveTimeout) {
+        pool = new AudioBufferPool(poolSize, totalBufferSize + 16);
+        this.receiveTimeout = receiveTimeout;
+        dropCounter = new KernelDropCounter(port);
+        try {
+            channel = DatagramChannel.open();
+            if (receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                final int actual = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+                if (actual < receiveBufferSize)
+                    log.warn("Receive buffer limited to " + actual + " bytes by the system (requested " + receiveBufferSize + ")");
+            }
+            channel.bind(new InetSocketAddress(port));
+
+            if (batched || receiveTimeout > 0) {
+                channel.configureBlocking(false);
+                selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_READ);
+            } else {
+                channel.configureBlocking(true);
+                selector = null;
+            }
+            maxBatchSize = batched ? Math.max(1, poolSize / 2) : 1;
+            batch = batched ? new ArrayDeque<>(maxBatchSize) : null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        Metrics.register("kernel_drops", this::getKernelDrops);
+        Metrics.register("input_pool_misses", pool::getMisses);
+        if (batched) {
+            Metrics.register("batches", this::getBatches);
+            Metrics.gauge("average_batch_size", this::getAverageBatchSize);
+        }
+    }
+
+    /**
+     * Read or wait for packets coming from the given port.
+     *
+     * @return  {@link AudioData} : representing the most recent packet received;
+     *          {@code null}      : if a packet was received with error, or none arrived within the receive timeout.
+     */
+    @Override
+    public AudioData read() {
+
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+
+        if (batch != null) {
+            if (batch.isEmpty()) receiveBatch();
+            current = batch.poll();
+            return current != null ? current.publish() : null;
+        }
+
+        final AudioBuffer buffer = pool.acquire();
+        try {
+            if (selector != null) select();
+            // Without a packet only when the receive timeout elapsed
+            if (channel.receive(buffer.buffer()) != null) {
+                current = buffer;
+                logStatistics();
+                return buffer.publish();
+            }
+            buffer.release();
+        } catch (IOException e) {
+            buffer.release();
+            log.error("Failed to receive packet: ", e);
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Wait for the socket to be readable, at most the receive timeout if there is one.
+     */
+    private void select() throws IOException {
+        if (receiveTimeout > 0) selector.select(receiveTimeout);
+        else selector.select();
+        selector.selectedKeys().clear();
+    }
+
+    /**
+     * Wait for the socket to be readable and drain every queued datagram to the batch.
+     */
+    private void receiveBatch() {
+        try {
+            select();
+
+            while (batch.size() < maxBatchSize) {
+                final AudioBuffer buffer = pool.acquire();
+                if (channel.receive(buffer.buffer()) == null) {
+                    buffer.release();
+                    break;
+                }
+                batch.add(buffer);
+            }
+        } catch (IOException e) {
+            log.error("Failed to receive packets: ", e);
+        }
+
+        if (batch.isEmpty()) return;
+        batches++;
+        batchedPackets += batch.size();
+        lastBatchSize = batch.size();
+        if (lastBatchSize > largestBatchSize) largestBatchSize = lastBatchSize;
+        logStatistics();
+    }
+
+    /**
+     * Log the drop and batch counters from time to time.
+     */
+    private void logStatistics() {
+        final long now = System.currentTimeMillis();
+        if (now - lastStatistics < STATISTICS_INTERVAL) return;
+        lastStatistics = now;
+        if (batch != null)
+            log.info("Batches: " + batches + ", average size: " + getAverageBatchSize() + ", largest: " + largestBatchSize
+                    + ", kernel drops: " + getKernelDrops() + ", pool misses: " + pool.getMisses());
+        else
+            log.info("Kernel drops: " + getKernelDrops() + ", pool misses: " + pool.getMisses());
+    }
+
+    /**
+     * Close the underlying channel.
+     */
+    public void close() {
+        try {
+            if (selector != null) selector.close();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close channel", e);
+        }
+    }
+
+    /**
+     * @return the pool that backs the received packets.
+     */
+    public AudioBufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the amount of datagrams dropped by the kernel for this port, or {@code -1} if not available.
+     */
+    public long getKernelDrops() {
+        return dropCounter.read();
+    }
+
+    /**
+     * @return the amount of batches received.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the amount of packets received in batches.
+     */
+    public long getBatchedPackets() {
+        return batchedPackets;
+    }
+
+    /**
+     * @return the size of the most recent batch.
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return the size of the largest batch received; if it reaches the maximum batch size, the pool is too small.
+     */
+    public int getLargestBatchSize() {
+        return largestBatchSize;
+    }
+
+    /**
+     * @return the average size of the received batches.
+     */
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) batchedPackets / batches;
+    }
+
+}
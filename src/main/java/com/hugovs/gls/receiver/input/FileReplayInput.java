@@ -0,0 +1,206 @@
+package com.hugovs.gls.receiver.input;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioInput;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link AudioInput} implementation that replays a WAV or raw PCM file as if it was sent by many devices, to
+ * measure the extensions without real devices.
+ *
+ * The file is memory mapped and cut in packets of {@code totalBufferSize} bytes. Each simulated device replays the
+ * whole file from its own starting point, so the devices are not in phase, with source ids counted from
+ * {@code firstSourceId} and timestamps counted from the start of the replay. The devices take turns, one packet
+ * each, and every round of packets is paced to {@code speed} times real time, or sent as fast as possible if the
+ * speed is {@code 0}. Raw PCM files must already be in the server audio format; WAV files are only checked against
+ * it.
+ *
+ * Packets are backed by pooled {@link AudioBuffer}s, released on the next {@link #read()} like in
+ * {@link ChannelAudioInput}.
+ *
+ * @author Hugo Sartori
+ */
+public class FileReplayInput implements AudioInput {
+
+    private static final Logger log = Logger.getLogger(FileReplayInput.class);
+
+    private final ByteBuffer samples;
+    private final long packets;
+    private final int packetSize;
+    private final int devices;
+    private final long firstSourceId;
+    private final double speed;
+    private final boolean loop;
+    private final long packetNanos;
+    private final long[] positions;
+    private final AudioBufferPool pool;
+    private AudioBuffer current;
+
+    private int device;
+    private long round;
+    private long start;
+    private long startMillis;
+    private boolean finished;
+
+    /**
+     * Creates an {@link FileReplayInput} instance.
+     *
+     * @param path:            the WAV or raw PCM file.
+     * @param sampleRate:      the sample rate of the server.
+     * @param sampleSize:      the sample size in bits of the server.
+     * @param totalBufferSize: the size in bytes of the samples of each packet.
+     * @param devices:         the amount of simulated devices.
+     * @param firstSourceId:   the source id of the first simulated device.
+     * @param speed:           the replay speed relative to real time, or {@code 0} to replay as fast as possible.
+     * @param loop:            if the file is replayed again after its end.
+     * @param poolSize:        the amount of pooled packet buffers.
+     * @throws IOException if the file could not be read.
+     */
+    public FileReplayInput(Path path, int sampleRate, int sampleSize, int totalBufferSize, int devices,
+                           long firstSourceId, double speed, boolean loop, int poolSize) throws IOException {
+        if (devices < 1) throw new IllegalArgumentException("At least one device is required");
+        if (speed < 0) throw new IllegalArgumentException("The speed must not be negative");
+        this.packetSize = totalBufferSize;
+        this.devices = devices;
+        this.firstSourceId = firstSourceId;
+        this.speed = speed;
+        this.loop = loop;
+        this.packetNanos = Math.round(totalBufferSize / (double) (sampleSize / 8) / sampleRate * 1e9);
+        this.pool = new AudioBufferPool(poolSize, totalBufferSize + AudioPackets.HEADER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = Math.min(channel.size(), Integer.MAX_VALUE);
+            if (size < channel.size()) log.warn("Only the first " + size + " bytes of " + path + " are replayed");
+            final MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.samples = isWave(file) ? waveData(file, path, sampleRate, sampleSize) : file;
+        }
+        if (samples.capacity() < packetSize)
+            throw new IllegalArgumentException("The file " + path + " is smaller than a packet");
+
+        // Spread the starting points of the devices over the file, aligned to packets
+        this.packets = samples.capacity() / packetSize;
+        this.positions = new long[devices];
+        for (int i = 0; i < devices; i++)
+            positions[i] = (packets * i / devices) * packetSize;
+
+        log.info("Replaying " + path + " (" + samples.capacity() + " bytes) as " + devices + " devices at "
+                + (speed > 0 ? speed + "x" : "maximum speed") + (loop ? ", looping" : ""));
+    }
+
+    /**
+     * Read the next packet, waiting until it is due at the replay speed.
+     *
+     * @return  {@link AudioData} : representing the next packet of the next device;
+     *          {@code null}      : if the replay finished.
+     */
+    @Override
+    public AudioData read() {
+
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+
+        if (finished) {
+            // Do not spin the server thread after the end
+            LockSupport.parkNanos(100_000_000L);
+            return null;
+        }
+
+        if (start == 0) {
+            start = System.nanoTime();
+            startMillis = System.currentTimeMillis();
+        }
+
+        if (device == 0 && speed > 0) {
+            final long due = start + (long) (round * packetNanos / speed);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+        }
+
+        final long position = positions[device];
+        final AudioBuffer buffer = pool.acquire();
+        final ByteBuffer target = buffer.buffer();
+        AudioPackets.writeHeader(target, firstSourceId + device, startMillis + round * packetNanos / 1_000_000);
+        final ByteBuffer source = samples.duplicate();
+        source.position((int) position);
+        source.limit((int) Math.min(samples.capacity(), position + packetSize));
+        target.put(source);
+        current = buffer;
+
+        // Move this device to its next packet, wrapping around the file
+        long next = position + packetSize;
+        if (next + packetSize > samples.capacity()) next = 0;
+        positions[device] = next;
+
+        if (++device == devices) {
+            device = 0;
+            round++;
+            if (!loop && round >= packets) {
+                finished = true;
+                log.info("Replay finished after " + round + " packets of each device");
+            }
+        }
+
+        return buffer.publish();
+
+    }
+
+    /**
+     * @return the amount of packet rounds replayed, one packet of each device per round.
+     */
+    public long getRounds() {
+        return round;
+    }
+
+    private static boolean isWave(ByteBuffer file) {
+        return file.capacity() >= 12
+                && file.get(0) == 'R' && file.get(1) == 'I' && file.get(2) == 'F' && file.get(3) == 'F'
+                && file.get(8) == 'W' && file.get(9) == 'A' && file.get(10) == 'V' && file.get(11) == 'E';
+    }
+
+    /**
+     * Find the samples of a WAV file, warning if its format is not the server format.
+     */
+    private static ByteBuffer waveData(ByteBuffer file, Path path, int sampleRate, int sampleSize) {
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 12;
+        while (offset + 8 <= file.capacity()) {
+            final int id = file.getInt(offset);
+            final long length = file.getInt(offset + 4) & 0xFFFFFFFFL;
+            final int body = offset + 8;
+            if (id == chunkId("fmt ")) {
+                final int format = file.getShort(body) & 0xFFFF;
+                final int channels = file.getShort(body + 2) & 0xFFFF;
+                final int rate = file.getInt(body + 4);
+                final int bits = file.getShort(body + 14) & 0xFFFF;
+                if (format != 1 && format != 0xFFFE) log.warn(path + " is not PCM (format " + format + ")");
+                if (channels != 1 || rate != sampleRate || bits != sampleSize)
+                    log.warn(path + " has " + channels + " channels of " + bits + " bits at " + rate + " Hz, but the server expects 1 channel of "
+                            + sampleSize + " bits at " + sampleRate + " Hz");
+            } else if (id == chunkId("data")) {
+                final int end = (int) Math.min(file.capacity(), body + length);
+                final ByteBuffer data = file.duplicate();
+                data.position(body).limit(end);
+                return data.slice();
+            }
+            offset = (int) Math.min(Integer.MAX_VALUE, body + length + (length & 1));
+        }
+        throw new IllegalArgumentException("The WAV file " + path + " has no data chunk");
+    }
+
+    private static int chunkId(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+
+}
@@ -0,0 +1,380 @@
+package com.hugovs.gls.receiver.input;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioInput;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import com.hugovs.gls.receiver.util.LongHashMap;
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioInput} decorator that reorders the packets of each device and fills the lost ones with silence, so
+ * the extensions always see a continuous stream per device.
+ *
+ * Each device has a fixed ring of {@code depth} slots, indexed by the position of the packet timestamp after the
+ * last released packet, counted in packet durations. The ring storage ({@code depth} packets) is allocated with the
+ * stream and packets are copied into it when they arrive, so the decorated input can reuse its buffers and waiting
+ * packets never take buffers from a pool, however many devices are waiting. A packet is copied to an
+ * {@link AudioBuffer} of an own pool only when it is released, so the pool is sized for the packets in flight
+ * downstream, not for the devices. The packets at the head of the ring are released in
+ * order; a missing packet is replaced by silence once a later packet waited for {@code maxDelay} milliseconds, or
+ * once the ring is full. Packets older than the last released one are dropped as late, and a jump of the timestamps
+ * larger than {@link #MAX_GAP} rings, forwards or backwards (a restarted app, a stepped clock), restarts the stream
+ * without filling the gap. Waiting packets are checked on each
+ * {@link #read()}; to release them while no device is sending, the decorated input must return {@code null} when no
+ * packet arrives for a while, like {@link ChannelAudioInput} and {@link UdpAudioInput} with a receive timeout.
+ *
+ * At most {@code maxDevices} devices have a stream: the packets of other devices are dropped and counted until a
+ * stream is removed. A stream is removed, releasing its waiting packets, once its device has been idle for
+ * {@link #IDLE_DELAYS} times {@code maxDelay}, or for the {@link #MAX_GAP} rings after which it would restart anyway
+ * if that is longer.
+ *
+ * The lost, reordered, late and dropped totals are logged from time to time and published in the {@link Metrics}.
+ *
+ * Like {@link ChannelAudioInput}, the reference to the returned {@link AudioData} is released on the next
+ * {@link #read()}.
+ *
+ * @author Hugo Sartori
+ */
+public class JitterBufferInput implements AudioInput {
+
+    private static final Logger log = Logger.getLogger(JitterBufferInput.class);
+
+    public static final int DEFAULT_DEPTH = 8;
+    public static final long DEFAULT_MAX_DELAY = 200;
+    public static final int MAX_GAP = 4;
+    public static final int IDLE_DELAYS = 5;
+    public static final int DEFAULT_MAX_DEVICES = 4096;
+    private static final long STATISTICS_INTERVAL = 10_000;
+
+    private final AudioInput input;
+    private final int depth;
+    private final long maxDelay;
+    private final long idleTime;
+    private final int maxDevices;
+    private final int sampleBytes;
+    private final double packetDuration;
+    private final AudioBufferPool pool;
+    private final LongHashMap<Stream> streams = new LongHashMap<>(256);
+    private final ArrayDeque<AudioBuffer> ready = new ArrayDeque<>();
+    private long[] idle = new long[16];
+    private int idleCount;
+    private AudioBuffer current;
+    private long lastSweep = System.currentTimeMillis();
+    private long lastStatistics = System.currentTimeMillis();
+
+    // Totals, published in the metrics
+    private volatile long lost;
+    private volatile long reordered;
+    private volatile long late;
+    private volatile long dropped;
+
+    /**
+     * Creates an {@link JitterBufferInput} instance.
+     *
+     * @param input:           the input of the packets.
+     * @param sampleRate:      the sample rate of the packets.
+     * @param sampleSize:      the sample size in bits of the packets.
+     * @param totalBufferSize: the size in bytes of the samples of each packet.
+     * @param depth:           the amount of packets each device can wait to be reordered.
+     * @param maxDelay:        the time in milliseconds a packet waits for the missing packets before it.
+     * @param poolSize:        the amount of pooled buffers of the released packets held downstream; room for the
+     *                         packets a single received packet can release is added to it.
+     */
+    public JitterBufferInput(AudioInput input, int sampleRate, int sampleSize, int totalBufferSize, int depth,
+                             long maxDelay, int poolSize) {
+        this(input, sampleRate, sampleSize, totalBufferSize, depth, maxDelay, poolSize, DEFAULT_MAX_DEVICES);
+    }
+
+    /**
+     * Creates an {@link JitterBufferInput} instance.
+     *
+     * @param input:           the input of the packets.
+     * @param sampleRate:      the sample rate of the packets.
+     * @param sampleSize:      the sample size in bits of the packets.
+     * @param totalBufferSize: the size in bytes of the samples of each packet.
+     * @param depth:           the amount of packets each device can wait to be reordered.
+     * @param maxDelay:        the time in milliseconds a packet waits for the missing packets before it.
+     * @param poolSize:        the amount of pooled buffers of the released packets held downstream; room for the
+     *                         packets a single received packet can release is added to it.
+     * @param maxDevices:      the maximum amount of devices with a stream, each holding {@code depth} packets.
+     */
+    public JitterBufferInput(AudioInput input, int sampleRate, int sampleSize, int totalBufferSize, int depth,
+                             long maxDelay, int poolSize, int maxDevices) {
+        if (depth < 1) throw new IllegalArgumentException("The depth must be positive");
+        if (maxDevices < 1) throw new IllegalArgumentException("The maximum amount of devices must be positive");
+        this.input = input;
+        this.depth = depth;
+        this.maxDelay = maxDelay;
+        this.maxDevices = maxDevices;
+        this.sampleBytes = totalBufferSize;
+        this.packetDuration = totalBufferSize / (double) (sampleSize / 8) / sampleRate * 1000;
+        this.idleTime = Math.max(IDLE_DELAYS * maxDelay, (long) Math.ceil(depth * MAX_GAP * packetDuration));
+        // A received packet releases at most the rings it skips over plus the ring that was waiting
+        this.pool = new AudioBufferPool(poolSize + depth * (MAX_GAP + 1), totalBufferSize + AudioPackets.HEADER_SIZE);
+
+        Metrics.register("lost_packets", this::getLost);
+        Metrics.register("reordered_packets", this::getReordered);
+        Metrics.register("late_packets", this::getLate);
+        Metrics.register("jitter_dropped_packets", this::getDropped);
+        Metrics.register("jitter_pool_misses", pool::getMisses);
+    }
+
+    /**
+     * Read the next packet in order of the devices that have one ready.
+     *
+     * @return  {@link AudioData} : representing the next packet, or silence in place of a lost one;
+     *          {@code null}      : if the decorated input returned an error.
+     */
+    @Override
+    public AudioData read() {
+
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+
+        while (ready.isEmpty()) {
+            final AudioData data = input.read();
+            final long now = System.currentTimeMillis();
+            if (data != null) offer(data, now);
+            if (now - lastSweep >= maxDelay) sweep(now);
+            logStatistics(now);
+            if (data == null && ready.isEmpty()) return null;
+        }
+
+        current = ready.poll();
+        return current.getData();
+
+    }
+
+    /**
+     * Put a received packet in the ring of its device.
+     */
+    private void offer(final AudioData data, final long now) {
+        final long sourceId = data.getSourceId();
+        final long timestamp = data.getTimestamp();
+        Stream stream = streams.get(sourceId);
+        if (stream == null) {
+            if (streams.size() >= maxDevices) {
+                if (dropped++ == 0) log.warn("Too many devices, dropping the packets of new devices");
+                return;
+            }
+            stream = new Stream(sourceId, timestamp);
+            streams.put(sourceId, stream);
+        }
+        stream.lastSeen = now;
+
+        long position = Math.round((timestamp - stream.next) / packetDuration);
+        if (position >= depth * MAX_GAP || position <= -depth * MAX_GAP) {
+            // The device restarted or its clock jumped: release what is waiting and follow the new timestamps
+            while (stream.waiting > 0) advance(stream, true);
+            stream.next = timestamp;
+            position = 0;
+        }
+        if (position < 0) {
+            stream.late++;
+            late++;
+            return;
+        }
+        while (position >= depth) {
+            advance(stream, true);
+            position--;
+        }
+
+        final int slot = (stream.head + (int) position) % depth;
+        if (stream.present[slot]) {
+            stream.late++;
+            late++;
+            return;
+        }
+        if (position < stream.highest) {
+            stream.reordered++;
+            reordered++;
+        } else {
+            stream.highest = (int) position;
+        }
+
+        stream.store(slot, data);
+        if (stream.waiting++ == 0) stream.since = now;
+        while (stream.present[stream.head]) advance(stream, false);
+        if (stream.waiting > 0 && now - stream.since >= maxDelay) release(stream, now);
+    }
+
+    /**
+     * Release the packets of every device that waited too long for a missing packet, and remove the idle devices.
+     */
+    private void sweep(final long now) {
+        lastSweep = now;
+        idleCount = 0;
+        streams.forEach((id, stream) -> {
+            if (stream.waiting > 0 && now - stream.since >= maxDelay) release(stream, now);
+            if (now - stream.lastSeen >= idleTime) {
+                while (stream.waiting > 0) advance(stream, true);
+                if (idleCount == idle.length) idle = Arrays.copyOf(idle, idleCount * 2);
+                idle[idleCount++] = id;
+            }
+        });
+        // Removed after the visit, the map can not be changed while visited
+        for (int i = 0; i < idleCount; i++)
+            streams.remove(idle[i]);
+    }
+
+    /**
+     * Give up on the missing packets at the head of a stream until a waiting packet is released.
+     */
+    private void release(final Stream stream, final long now) {
+        while (!stream.present[stream.head]) advance(stream, true);
+        while (stream.waiting > 0 && stream.present[stream.head]) advance(stream, false);
+        stream.since = now;
+    }
+
+    /**
+     * Release the head of a stream, or silence in its place, and move to the next slot.
+     */
+    private void advance(final Stream stream, final boolean fill) {
+        AudioBuffer buffer = null;
+        if (stream.present[stream.head]) {
+            buffer = stream.take(stream.head);
+            stream.waiting--;
+        } else if (fill) {
+            buffer = silence(stream.sourceId, Math.round(stream.next));
+            stream.lost++;
+            lost++;
+        }
+        if (buffer != null) ready.add(buffer);
+
+        stream.head = (stream.head + 1) % depth;
+        stream.next += packetDuration;
+        stream.highest = Math.max(0, stream.highest - 1);
+    }
+
+    private AudioBuffer silence(final long sourceId, final long timestamp) {
+        final AudioBuffer buffer = pool.acquire();
+        // The samples after the header are zeroed when published
+        AudioPackets.writeHeader(buffer.buffer(), sourceId, timestamp);
+        buffer.publish();
+        return buffer;
+    }
+
+    /**
+     * Log the loss, reorder and late counters from time to time.
+     */
+    private void logStatistics(final long now) {
+        if (now - lastStatistics < STATISTICS_INTERVAL) return;
+        lastStatistics = now;
+        log.info("Devices: " + streams.size() + ", lost: " + lost + ", reordered: " + reordered + ", late: " + late
+                + ", dropped: " + dropped + ", pool misses: " + pool.getMisses());
+    }
+
+    /**
+     * @return the amount of packets of a device replaced by silence, or {@code -1} if the device is unknown.
+     */
+    public long getLost(long sourceId) {
+        final Stream stream = streams.get(sourceId);
+        return stream != null ? stream.lost : -1;
+    }
+
+    /**
+     * @return the amount of packets of a device that arrived before a previous one, or {@code -1} if the device is unknown.
+     */
+    public long getReordered(long sourceId) {
+        final Stream stream = streams.get(sourceId);
+        return stream != null ? stream.reordered : -1;
+    }
+
+    /**
+     * @return the amount of packets of a device dropped for arriving after their place was released, or {@code -1}
+     *         if the device is unknown.
+     */
+    public long getLate(long sourceId) {
+        final Stream stream = streams.get(sourceId);
+        return stream != null ? stream.late : -1;
+    }
+
+    /**
+     * @return the amount of packets of every device replaced by silence.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return the amount of packets of every device that arrived before a previous one.
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * @return the amount of packets of every device dropped for arriving too late.
+     */
+    public long getLate() {
+        return late;
+    }
+
+    /**
+     * @return the amount of packets dropped because too many devices had a stream.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * The ring of waiting packets of a device.
+     */
+    private final class Stream {
+
+        private final long sourceId;
+        private final byte[] samples = new byte[depth * sampleBytes];
+        private final long[] timestamps = new long[depth];
+        private final boolean[] present = new boolean[depth];
+        private int head;
+        private int waiting;
+        private int highest;
+        private double next;
+        private long since;
+        private long lastSeen;
+
+        // Counters
+        private long lost;
+        private long reordered;
+        private long late;
+
+        Stream(long sourceId, long timestamp) {
+            this.sourceId = sourceId;
+            this.next = timestamp;
+        }
+
+        /**
+         * Copy a received packet to a slot of the ring.
+         */
+        void store(final int slot, final AudioData data) {
+            final byte[] received = data.getSamples();
+            final int length = Math.min(received.length, sampleBytes);
+            final int offset = slot * sampleBytes;
+            System.arraycopy(received, 0, samples, offset, length);
+            if (length < sampleBytes) Arrays.fill(samples, offset + length, offset + sampleBytes, (byte) 0);
+            timestamps[slot] = data.getTimestamp();
+            present[slot] = true;
+        }
+
+        /**
+         * Copy the packet of a slot to a pooled buffer and free the slot.
+         */
+        AudioBuffer take(final int slot) {
+            final AudioBuffer buffer = pool.acquire();
+            final ByteBuffer target = buffer.buffer();
+            AudioPackets.writeHeader(target, sourceId, timestamps[slot]);
+            target.put(samples, slot * sampleBytes, sampleBytes);
+            buffer.publish();
+            present[slot] = false;
+            return buffer;
+        }
+
+    }
+
+}
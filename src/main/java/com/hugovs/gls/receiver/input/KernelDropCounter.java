@@ -0,0 +1,70 @@
+package com.hugovs.gls.receiver.input;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Reads the amount of datagrams dropped by the kernel for a udp port.
+ *
+ * The counter comes from the {@code drops} column of {@code /proc/net/udp} and {@code /proc/net/udp6}, so it is only
+ * available on Linux. On other systems {@link #read()} always returns {@code -1}. It can be read from any thread.
+ *
+ * @author Hugo Sartori
+ */
+public class KernelDropCounter {
+
+    private static final Logger log = Logger.getLogger(KernelDropCounter.class);
+
+    private static final Path[] TABLES = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+
+    private final String portSuffix;
+    private volatile boolean available = true;
+
+    /**
+     * Creates an {@link KernelDropCounter} instance.
+     *
+     * @param port: the local udp port to count the drops.
+     */
+    public KernelDropCounter(int port) {
+        portSuffix = String.format(":%04X", port);
+    }
+
+    /**
+     * Read the current amount of dropped datagrams.
+     *
+     * @return the amount of dropped datagrams since the socket was created;
+     *         {@code -1} if the counter is not available.
+     */
+    public long read() {
+        if (!available) return -1;
+
+        long drops = 0;
+        boolean found = false;
+        for (final Path table : TABLES) {
+            if (!Files.isReadable(table)) continue;
+            try (BufferedReader reader = Files.newBufferedReader(table)) {
+                reader.readLine(); // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] columns = line.trim().split("\\s+");
+                    if (columns.length < 13 || !columns[1].endsWith(portSuffix)) continue;
+                    drops += Long.parseLong(columns[columns.length - 1]);
+                    found = true;
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.warn("Failed to read " + table + ", kernel drops will not be counted", e);
+                available = false;
+                return -1;
+            }
+        }
+
+        if (!found) available = false;
+        return found ? drops : -1;
+    }
+
+}
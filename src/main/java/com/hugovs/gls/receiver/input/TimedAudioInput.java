@@ -0,0 +1,45 @@
+package com.hugovs.gls.receiver.input;
+
+import com.hugovs.gls.core.AudioData;
+import com.hugovs.gls.core.AudioInput;
+import com.hugovs.gls.receiver.metrics.Histogram;
+import com.hugovs.gls.receiver.metrics.Metrics;
+import com.hugovs.gls.receiver.util.AudioProperties;
+import com.hugovs.gls.receiver.util.Property;
+
+/**
+ * An {@link AudioInput} decorator that times the reads of another input in the {@code input} stage of the
+ * {@link Metrics}, and marks each packet with the time it was read, so the following stages are timed from it.
+ *
+ * @author Hugo Sartori
+ */
+public class TimedAudioInput implements AudioInput {
+
+    private final AudioInput input;
+    private final Histogram histogram = Metrics.stage("input");
+
+    /**
+     * Creates an {@link TimedAudioInput} instance.
+     *
+     * @param input: the timed input.
+     */
+    public TimedAudioInput(AudioInput input) {
+        this.input = input;
+    }
+
+    @Override
+    public AudioData read() {
+        final long start = System.nanoTime();
+        final AudioData data = input.read();
+        if (data == null) return null;
+
+        final long now = System.nanoTime();
+        histogram.record(now - start);
+        Metrics.count(Metrics.Counter.PACKETS, 1);
+        final AudioProperties properties = AudioProperties.of(data);
+        properties.setCount(Property.RECEIVED, now);
+        properties.setCount(Property.MARK, now);
+        return data;
+    }
+
+}
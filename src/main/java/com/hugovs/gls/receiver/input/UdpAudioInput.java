@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 
 /**
  * An {@link AudioInput} implementation that receiver audio from udp packets in a given port.
@@ -28,9 +29,39 @@ public class UdpAudioInput implements AudioInput {
      * @param totalBufferSize: the buffer size in bytes to store received data.
      */
     public UdpAudioInput(int port, int totalBufferSize) {
+        this(port, totalBufferSize, 0);
+    }
+
+    /**
+     * Creates an {@link UdpAudioInput} instance.
+     *
+     * @param port: the port to listen to udp packets.
+     * @param totalBufferSize: the buffer size in bytes to store received data.
+     * @param receiveBufferSize: the socket receive buffer size (SO_RCVBUF) in bytes, or {@code 0} to keep the default.
+     */
+    public UdpAudioInput(int port, int totalBufferSize, int receiveBufferSize) {
+        this(port, totalBufferSize, receiveBufferSize, 0);
+    }
+
+    /**
+     * Creates an {@link UdpAudioInput} instance.
+     *
+     * @param port: the port to listen to udp packets.
+     * @param totalBufferSize: the buffer size in bytes to store received data.
+     * @param receiveBufferSize: the socket receive buffer size (SO_RCVBUF) in bytes, or {@code 0} to keep the default.
+     * @param receiveTimeout: the milliseconds to wait for a packet before {@link #read()} returns {@code null}, or
+     *                        {@code 0} to wait indefinitely.
+     */
+    public UdpAudioInput(int port, int totalBufferSize, int receiveBufferSize, int receiveTimeout) {
         receive = new byte[totalBufferSize + 16];
         try {
             socket = new DatagramSocket(port);
+            socket.setSoTimeout(receiveTimeout);
+            if (receiveBufferSize > 0) {
+                socket.setReceiveBufferSize(receiveBufferSize);
+                if (socket.getReceiveBufferSize() < receiveBufferSize)
+                    log.warn("Receive buffer limited to " + socket.getReceiveBufferSize() + " bytes by the system");
+            }
         } catch (SocketException e) {
             throw new RuntimeException(e);
         }
@@ -40,7 +71,7 @@ public class UdpAudioInput implements AudioInput {
      * Read or wait for packets coming from the given port.
      *
      * @return  {@link AudioData} : representing the most recent packet received;
-     *          {@code null}      : if a packet was received with error.
+     *          {@code null}      : if a packet was received with error, or none arrived within the receive timeout.
      */
     @Override
     public AudioData read() {
@@ -50,6 +81,8 @@ public class UdpAudioInput implements AudioInput {
         try {
             socket.receive(packet);
             return AudioData.wrap(packet.getData());
+        } catch (SocketTimeoutException e) {
+            return null;
         } catch (IOException e) {
             log.error("Failed to receiver packet: ", e);
         }
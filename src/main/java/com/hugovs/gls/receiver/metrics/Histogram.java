@@ -0,0 +1,111 @@
+package com.hugovs.gls.receiver.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with buckets of logarithmic size like an HDR histogram.
+ *
+ * Each power of two is split in {@link #SUB_BUCKETS} linear buckets, so a value is recorded with an error below
+ * {@code 1 / SUB_BUCKETS} of itself, from one nanosecond to about 18 minutes. Recording is a few arithmetic
+ * operations and atomic increments, and never allocates, so it can be done by many threads on the hot path.
+ *
+ * @author Hugo Sartori
+ */
+public class Histogram {
+
+    public static final int SUB_BUCKETS = 16;
+
+    private static final int SUB_BITS = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos: the duration in nanoseconds. Negative durations are recorded as zero.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return the amount of recorded durations.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Take a summary of the recorded durations. Values recorded meanwhile may be partially included.
+     *
+     * @return the summary, in microseconds.
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts[i] = buckets.get(i);
+
+        final Snapshot snapshot = new Snapshot();
+        snapshot.count = total;
+        if (total == 0) return snapshot;
+        // The buckets are incremented before the count, so the count may still be zero: divide by the buckets total
+        snapshot.mean = sum.sum() / (double) total / 1000;
+        snapshot.p50 = percentile(counts, total, 0.5);
+        snapshot.p90 = percentile(counts, total, 0.9);
+        snapshot.p99 = percentile(counts, total, 0.99);
+        snapshot.p999 = percentile(counts, total, 0.999);
+        snapshot.max = max.get() / 1000.0;
+        return snapshot;
+    }
+
+    private static double percentile(long[] counts, long total, double quantile) {
+        final long rank = Math.max(1, (long) Math.ceil(total * quantile));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return highestValueOf(i) / 1000.0;
+        }
+        return highestValueOf(counts.length - 1) / 1000.0;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(value));
+        if (exponent == MAX_EXPONENT && value >= (1L << (MAX_EXPONENT + 1))) return BUCKETS - 1;
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * A summary of a {@link Histogram}, in microseconds.
+     */
+    public static class Snapshot {
+        public long count;
+        public double mean;
+        public double p50, p90, p99, p999;
+        public double max;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.hugovs.gls.receiver.metrics;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the latency histograms and counters of the receiver.
+ *
+ * Stages are the input read and the extensions of the pipeline, each timed into a {@link Histogram} by name. The
+ * latency from the read of a packet until its data is published by the API is also kept for each of the first
+ * {@link #MAX_DEVICES} devices. Components that keep their own counters, like the inputs, register them by name and
+ * these are read when a snapshot is taken.
+ *
+ * @author Hugo Sartori
+ */
+public class Metrics {
+
+    public static final int MAX_DEVICES = 1024;
+
+    private static final long started = System.currentTimeMillis();
+    private static final Map<String, Histogram> stages = new ConcurrentHashMap<>();
+    private static final Map<Long, Histogram> devices = new ConcurrentHashMap<>();
+    private static final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private static final Map<String, LongSupplier> registeredCounters = new ConcurrentHashMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    static {
+        for (final Counter counter : Counter.values())
+            counters.put(counter, new LongAdder());
+    }
+
+    private Metrics() {
+        //no instance
+    }
+
+    /**
+     * The counted events.
+     */
+    public enum Counter {
+        PACKETS, WINDOWS, IMPULSIVE_WINDOWS, GUNSHOTS, PUBLISHED_FREQUENCIES, PUBLISHED_GUNSHOTS
+    }
+
+    /**
+     * Get the histogram of a stage, creating it on the first call. Callers on the hot path should keep it.
+     *
+     * @param name: the name of the stage.
+     * @return the histogram of the stage.
+     */
+    public static Histogram stage(String name) {
+        return stages.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Record the end-to-end latency of a device.
+     *
+     * @param deviceId: the device's id.
+     * @param nanos:    the latency in nanoseconds.
+     */
+    public static void recordDevice(long deviceId, long nanos) {
+        Histogram histogram = devices.get(deviceId);
+        if (histogram == null) {
+            if (devices.size() >= MAX_DEVICES) return;
+            histogram = devices.computeIfAbsent(deviceId, id -> new Histogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param counter: the counter.
+     * @param amount:  the amount to add.
+     */
+    public static void count(Counter counter, long amount) {
+        if (amount != 0) counters.get(counter).add(amount);
+    }
+
+    /**
+     * Register a counter kept by a component, replacing the one with the same name.
+     *
+     * @param name:    the name of the counter.
+     * @param counter: the current value of the counter; it is read from the thread taking the snapshot.
+     */
+    public static void register(String name, LongSupplier counter) {
+        registeredCounters.put(name, counter);
+    }
+
+    /**
+     * Register a value measured by a component, replacing the one with the same name.
+     *
+     * @param name:  the name of the value.
+     * @param gauge: the current value; it is read from the thread taking the snapshot.
+     */
+    public static void gauge(String name, DoubleSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Take a summary of every histogram and counter.
+     *
+     * @return the summary.
+     */
+    public static Snapshot snapshot() {
+        final Snapshot snapshot = new Snapshot();
+        snapshot.uptime = System.currentTimeMillis() - started;
+        for (final Map.Entry<Counter, LongAdder> entry : counters.entrySet())
+            snapshot.counters.put(entry.getKey().name().toLowerCase(), entry.getValue().sum());
+        for (final Map.Entry<String, LongSupplier> entry : new TreeMap<>(registeredCounters).entrySet())
+            snapshot.counters.put(entry.getKey(), entry.getValue().getAsLong());
+        for (final Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(gauges).entrySet())
+            snapshot.gauges.put(entry.getKey(), entry.getValue().getAsDouble());
+        for (final Map.Entry<String, Histogram> entry : new TreeMap<>(stages).entrySet())
+            snapshot.stages.put(entry.getKey(), entry.getValue().snapshot());
+        for (final Map.Entry<Long, Histogram> entry : new TreeMap<>(devices).entrySet())
+            snapshot.devices.put(entry.getKey(), entry.getValue().snapshot());
+        return snapshot;
+    }
+
+    /**
+     * A summary of the metrics, with latencies in microseconds.
+     */
+    public static class Snapshot {
+        public long uptime;
+        public final Map<String, Long> counters = new LinkedHashMap<>();
+        public final Map<String, Double> gauges = new LinkedHashMap<>();
+        public final Map<String, Histogram.Snapshot> stages = new LinkedHashMap<>();
+        public final Map<Long, Histogram.Snapshot> devices = new LinkedHashMap<>();
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.hugovs.gls.receiver.util;
+
+import com.hugovs.gls.core.AudioData;
+
+import java.util.Arrays;
+
+/**
+ * Indexed property slots of an {@link AudioData}, one per {@link Property}.
+ *
+ * The slots are attached to the data under a single key, so extensions do one lookup per data and then read and
+ * write objects, flags and counts by index, without hashing or boxing. Pooled inputs reuse the same instance for
+ * every packet of a buffer.
+ *
+ * @author Hugo Sartori
+ */
+public final class AudioProperties {
+
+    private static final String KEY = "PROPERTIES";
+    private static final int SIZE = Property.values().length;
+
+    private final Object[] values = new Object[SIZE];
+    private final long[] counts = new long[SIZE];
+    private long flags;
+
+    /**
+     * Get the properties of a given data, attaching new ones if it has none.
+     *
+     * @param data: the data.
+     * @return the {@link AudioProperties} of the data.
+     */
+    public static AudioProperties of(final AudioData data) {
+        final AudioProperties properties = find(data);
+        return properties != null ? properties : new AudioProperties().attach(data);
+    }
+
+    /**
+     * Get the properties of a given data.
+     *
+     * @param data: the data.
+     * @return {@link AudioProperties}: the properties of the data;
+     *         {@code null}           : if the data has no properties.
+     */
+    public static AudioProperties find(final AudioData data) {
+        final Object properties = data.getProperty(KEY);
+        return properties instanceof AudioProperties ? (AudioProperties) properties : null;
+    }
+
+    /**
+     * Clear these properties and attach them to a given data.
+     *
+     * @param data: the data.
+     * @return this instance.
+     */
+    public AudioProperties attach(final AudioData data) {
+        clear();
+        data.putProperty(KEY, this);
+        return this;
+    }
+
+    /**
+     * Remove every value, flag and count.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        Arrays.fill(counts, 0);
+        flags = 0;
+    }
+
+    /**
+     * Get the value of a given key.
+     *
+     * @param key: the key of the value.
+     * @return the value, or {@code null} if the data has no value for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final PropertyKey<T> key) {
+        return (T) values[key.index()];
+    }
+
+    /**
+     * Set the value of a given key.
+     *
+     * @param key:   the key of the value.
+     * @param value: the value, or {@code null} to remove it.
+     */
+    public <T> void put(final PropertyKey<T> key, final T value) {
+        values[key.index()] = value;
+    }
+
+    /**
+     * Check if a given key has a value.
+     *
+     * @param key: the key of the value.
+     * @return {@code true} if the data has a value for the key.
+     */
+    public boolean has(final PropertyKey<?> key) {
+        return values[key.index()] != null;
+    }
+
+    /**
+     * Get the flag of a given property.
+     *
+     * @param property: the property.
+     * @return the flag, {@code false} if it was never set.
+     */
+    public boolean getFlag(final Property property) {
+        return (flags & (1L << property.ordinal())) != 0;
+    }
+
+    /**
+     * Set the flag of a given property.
+     *
+     * @param property: the property.
+     * @param value:    the flag.
+     */
+    public void setFlag(final Property property, final boolean value) {
+        if (value) flags |= 1L << property.ordinal();
+        else flags &= ~(1L << property.ordinal());
+    }
+
+    /**
+     * Get the count of a given property.
+     *
+     * @param property: the property.
+     * @return the count, {@code 0} if it was never set.
+     */
+    public long getCount(final Property property) {
+        return counts[property.ordinal()];
+    }
+
+    /**
+     * Set the count of a given property.
+     *
+     * @param property: the property.
+     * @param value:    the count.
+     */
+    public void setCount(final Property property, final long value) {
+        counts[property.ordinal()] = value;
+    }
+
+    /**
+     * Add to the count of a given property.
+     *
+     * @param property: the property.
+     * @param delta:    the amount to be added.
+     */
+    public void addCount(final Property property, final long delta) {
+        counts[property.ordinal()] += delta;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.hugovs.gls.receiver.util;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Logs the detections of each device as a summary, at most once per interval, instead of a line per detection.
+ *
+ * The first detection of a device after a quiet interval is logged right away; the following ones are counted and
+ * logged together once the interval is over, on the next packet of the device. A device is forgotten after an
+ * interval without detections. At most {@link #MAX_DEVICES} devices are counted at once; the detections of other
+ * devices are logged right away.
+ *
+ * Recording is a map lookup and a few additions, and nothing is built unless a line is logged. Not thread-safe: each
+ * instance must be used by a single thread, like the extension that owns it.
+ *
+ * @author Hugo Sartori
+ */
+public class DetectionSummary {
+
+    public static final long DEFAULT_INTERVAL = 10_000;
+    public static final int MAX_DEVICES = 1024;
+
+    private final Logger log;
+    private final long intervalNanos;
+    private final LongHashMap<Counts> devices = new LongHashMap<>(64);
+
+    /**
+     * Creates an {@link DetectionSummary} instance.
+     *
+     * @param log:      the logger of the summaries, at INFO level.
+     * @param interval: the minimum time between the summaries of a device, in milliseconds.
+     */
+    public DetectionSummary(Logger log, long interval) {
+        this.log = log;
+        this.intervalNanos = interval * 1_000_000;
+    }
+
+    /**
+     * Record the detections of a packet. Must be called for every packet, with or without detections, so the counts
+     * of a device are logged as soon as its interval is over.
+     *
+     * @param deviceId: the device's id.
+     * @param windows:  the amount of impulsive windows.
+     * @param gunshots: the amount of windows classified as gunshots.
+     */
+    public void record(long deviceId, int windows, int gunshots) {
+        Counts counts = devices.get(deviceId);
+        if (counts == null) {
+            if (windows == 0) return;
+            log(deviceId, windows, gunshots, 0);
+            if (devices.size() < MAX_DEVICES) devices.put(deviceId, new Counts(System.nanoTime()));
+            return;
+        }
+
+        final long now = System.nanoTime();
+        if (now - counts.since < intervalNanos) {
+            counts.windows += windows;
+            counts.gunshots += gunshots;
+            return;
+        }
+
+        if (counts.windows > 0) {
+            // The interval is over: log what was counted during it, with this packet
+            log(deviceId, counts.windows + windows, counts.gunshots + gunshots, now - counts.since);
+        } else if (windows > 0) {
+            // First detection after a quiet interval
+            log(deviceId, windows, gunshots, 0);
+        } else {
+            devices.remove(deviceId);
+            return;
+        }
+        counts.windows = 0;
+        counts.gunshots = 0;
+        counts.since = now;
+    }
+
+    /**
+     * Log the detections of a device.
+     *
+     * @param deviceId: the device's id.
+     * @param windows:  the amount of impulsive windows.
+     * @param gunshots: the amount of windows classified as gunshots.
+     * @param nanos:    the time in nanoseconds the detections were counted, or {@code 0} for a single packet.
+     */
+    private void log(long deviceId, long windows, long gunshots, long nanos) {
+        if (!log.isInfoEnabled()) return;
+        log.info("Device " + deviceId + ": " + windows + " impulsive windows, " + gunshots + " gunshots"
+                + (nanos > 0 ? " in the last " + nanos / 1_000_000 + " ms" : ""));
+    }
+
+    /**
+     * The detections of a device since its last summary.
+     */
+    private static final class Counts {
+        private long windows;
+        private long gunshots;
+        private long since;
+
+        Counts(long since) {
+            this.since = since;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.hugovs.gls.receiver.util;
+
+public class GeoUtils {
+
+    public static final double EARTH_RADIUS = 6_371_008.8;
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private GeoUtils() {
+        //no instance
+    }
+
+    /**
+     * Calculate the great-circle distance between two coordinates with the haversine formula.
+     *
+     * @return the distance in meters.
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double dLat = Math.toRadians(latitude2 - latitude1);
+        final double dLon = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Get the length of a degree of longitude at a given latitude.
+     *
+     * @return the length in meters.
+     */
+    public static double metersPerLongitudeDegree(double latitude) {
+        return METERS_PER_DEGREE * Math.max(1e-6, Math.cos(Math.toRadians(latitude)));
+    }
+
+}
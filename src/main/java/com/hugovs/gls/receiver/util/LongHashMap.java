@@ -0,0 +1,165 @@
+package com.hugovs.gls.receiver.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive {@code long} keys to objects, with open addressing and linear probing.
+ *
+ * Keys are never boxed. The map is not thread-safe; to be shared, it must be filled by a single thread and then only
+ * read after being safely published.
+ *
+ * @param <V> the type of the values.
+ * @author Hugo Sartori
+ */
+public class LongHashMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an {@link LongHashMap} instance.
+     *
+     * @param expectedSize: the amount of entries expected, to size the table.
+     */
+    public LongHashMap(int expectedSize) {
+        final int capacity = Math.max(4, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Get the value of a given key.
+     *
+     * @param key: the key.
+     * @return the value, or {@code null} if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = indexOf(key); used[i]; i = (i + 1) & mask)
+            if (keys[i] == key) return (V) values[i];
+        return null;
+    }
+
+    /**
+     * Check if a given key is in the map.
+     *
+     * @param key: the key.
+     * @return {@code true} if the key has a value.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Set the value of a given key.
+     *
+     * @param key:   the key.
+     * @param value: the value, must not be {@code null}.
+     * @return the previous value, or {@code null} if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("Null values are not supported");
+        int i = indexOf(key);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                final V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+        return null;
+    }
+
+    /**
+     * Remove the value of a given key.
+     *
+     * @param key: the key.
+     * @return the removed value, or {@code null} if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        for (int i = indexOf(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] != key) continue;
+            final V previous = (V) values[i];
+            // Shift back the next entries of the cluster that can not be found past the hole anymore
+            int hole = i;
+            for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                if (((j - indexOf(keys[j])) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            used[hole] = false;
+            values[hole] = null;
+            size--;
+            return previous;
+        }
+        return null;
+    }
+
+    /**
+     * Remove every entry, keeping the capacity of the table.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return the amount of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visit every entry of the map.
+     *
+     * @param visitor: the visitor of the entries.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < keys.length; i++)
+            if (used[i]) visitor.visit(keys[i], (V) values[i]);
+    }
+
+    private int indexOf(long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldUsed[i]) put(oldKeys[i], (V) oldValues[i]);
+        Arrays.fill(oldValues, null);
+    }
+
+    /**
+     * A visitor of the entries of a {@link LongHashMap}.
+     */
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+}
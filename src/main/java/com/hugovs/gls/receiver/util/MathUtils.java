@@ -107,8 +107,73 @@ public class MathUtils {
         return absComplexes;
     }
 
+    public static double mean(double[] numbers, int start, int end) {
+        checkSubarrayArguments(numbers.length, start, end);
+        int length = end - start + 1;
+        double sum = 0d;
+        for (int i = start; i <= end; i++)
+            sum += numbers[i];
+        return sum / length;
+    }
+
+    public static double mean(double[] numbers) {
+        return mean(numbers, 0, numbers.length - 1);
+    }
+
+    public static double variance(double[] numbers, int start, int end) {
+        checkSubarrayArguments(numbers.length, start, end);
+        int length = end - start + 1;
+        double mean = mean(numbers, start, end);
+        double temp = 0d;
+        for (int i = start; i <= end; i++)
+            temp += (numbers[i] - mean) * (numbers[i] - mean);
+        return temp / (length - 1);
+    }
+
+    public static double variance(double[] numbers) {
+        return variance(numbers, 0, numbers.length - 1);
+    }
+
+    /**
+     * Primitive version of {@link #expectation(Complex[], int, int)}, with the same accumulation, so the thresholds
+     * tuned against it still apply.
+     */
+    public static double expectation(double[] numbers, int start, int end) {
+        checkSubarrayArguments(numbers.length, start, end);
+        int length = end - start + 1;
+        double prob = 1.0 / (double)length;
+        double sum = 0d;
+        for (int i = start; i <= end; i++)
+            sum = (sum + numbers[i]) * prob;
+        return sum;
+    }
+
+    public static double expectation(double[] numbers) {
+        return expectation(numbers, 0, numbers.length - 1);
+    }
+
+    /**
+     * Calculate the magnitudes of complex numbers given by its real and imaginary parts.
+     *
+     * @param re:     the real parts.
+     * @param im:     the imaginary parts.
+     * @param start:  the first index to be calculated.
+     * @param length: the amount of numbers to be calculated.
+     * @param out:    the array to store the magnitudes, starting at index 0.
+     * @return the {@code out} array.
+     */
+    public static double[] abs(final double[] re, final double[] im, int start, int length, final double[] out) {
+        for (int i = 0; i < length; i++)
+            out[i] = Math.sqrt(re[start + i] * re[start + i] + im[start + i] * im[start + i]);
+        return out;
+    }
+
     private static void checkSubarrayArguments(Object[] numbers, int start, int end) {
-        if (start < 0 || end < 0 || end < start || end > numbers.length) throw new IllegalArgumentException();
+        checkSubarrayArguments(numbers.length, start, end);
+    }
+
+    private static void checkSubarrayArguments(int length, int start, int end) {
+        if (start < 0 || end < 0 || end < start || end > length) throw new IllegalArgumentException();
     }
 
 }
@@ -1,5 +1,12 @@
 package com.hugovs.gls.receiver.util;
 
+/**
+ * The properties that extensions attach to an {@link com.hugovs.gls.core.AudioData}.
+ *
+ * Each property is a slot in the {@link AudioProperties} of the data: objects are read and written through a typed
+ * {@link PropertyKey}, flags and counts through the primitive accessors. The {@link #BIP} flag marks a data to be
+ * drawn as an alert by the {@link com.hugovs.gls.receiver.extensions.WaveDrawer}.
+ */
 public enum Property {
-    GUNSHOT, ALAN, FFT
+    GUNSHOT, ALAN, FFT, LEASE, PCM, WINDOWS, IMPULSIVE, RECEIVED, MARK, BIP
 }
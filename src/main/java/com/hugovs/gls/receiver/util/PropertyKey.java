@@ -0,0 +1,52 @@
+package com.hugovs.gls.receiver.util;
+
+import java.util.List;
+
+/**
+ * A typed key of an object {@link Property}, so values are read from {@link AudioProperties} without casts.
+ *
+ * The keys of generic values are declared here; keys of values owned by another package are declared next to their
+ * owner, so this package does not depend on them.
+ *
+ * @param <T> the type of the value.
+ * @author Hugo Sartori
+ */
+public final class PropertyKey<T> {
+
+    /** Magnitudes of every window of the data. */
+    public static final PropertyKey<List<double[]>> FFT = new PropertyKey<>(Property.FFT);
+    /** Magnitudes of the analyzed sub-band of every impulsive window. */
+    public static final PropertyKey<List<double[]>> ALAN = new PropertyKey<>(Property.ALAN);
+
+    private final Property property;
+
+    /**
+     * Creates a {@link PropertyKey} instance.
+     * Each {@link Property} must have a single key, declared as a constant.
+     *
+     * @param property: the property of the key.
+     */
+    public PropertyKey(Property property) {
+        this.property = property;
+    }
+
+    /**
+     * @return the property of this key.
+     */
+    public Property getProperty() {
+        return property;
+    }
+
+    /**
+     * @return the slot index of this key.
+     */
+    int index() {
+        return property.ordinal();
+    }
+
+    @Override
+    public String toString() {
+        return property.name();
+    }
+
+}
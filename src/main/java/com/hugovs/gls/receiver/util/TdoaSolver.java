@@ -0,0 +1,177 @@
+package com.hugovs.gls.receiver.util;
+
+/**
+ * Locates a sound source from the times it arrived at sensors with known coordinates (time difference of arrival).
+ *
+ * The coordinates are projected to a local plane in meters around the first sensor, and the position and emission
+ * time are fitted to the arrival times by least squares with damped Gauss-Newton iterations. Each iteration solves
+ * a 3x3 system, so the cost is linear in the amount of sensors. With one sensor the source is its position; with
+ * two, it is the point of the line between them that matches the difference of the arrival times.
+ *
+ * An instance reuses its buffers and holds the last solution, so it must be used by a single thread.
+ *
+ * @author Hugo Sartori
+ */
+public class TdoaSolver {
+
+    public static final double SPEED_OF_SOUND = 343;
+
+    private static final int MAX_ITERATIONS = 50;
+    private static final double CONVERGENCE = 1e-3;
+    private static final double DAMPING = 1e-6;
+
+    private final double speed;
+    private double[] x = new double[0], y = new double[0];
+
+    // Solution
+    private double latitude, longitude, time, error;
+
+    /**
+     * Creates an {@link TdoaSolver} instance with the {@link #SPEED_OF_SOUND}.
+     */
+    public TdoaSolver() {
+        this(SPEED_OF_SOUND);
+    }
+
+    /**
+     * Creates an {@link TdoaSolver} instance.
+     *
+     * @param speed: the speed of the sound, in meters per second.
+     */
+    public TdoaSolver(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Locate a source.
+     *
+     * @param latitudes:  the latitudes of the sensors.
+     * @param longitudes: the longitudes of the sensors.
+     * @param times:      the arrival times at the sensors, in seconds.
+     * @param count:      the amount of sensors.
+     */
+    public void solve(double[] latitudes, double[] longitudes, double[] times, int count) {
+        if (count < 1) throw new IllegalArgumentException("At least one sensor is required");
+        if (x.length < count) {
+            x = new double[count];
+            y = new double[count];
+        }
+
+        final double latitude0 = latitudes[0];
+        final double longitude0 = longitudes[0];
+        final double latitudeScale = GeoUtils.METERS_PER_DEGREE;
+        final double longitudeScale = GeoUtils.metersPerLongitudeDegree(latitude0);
+        int first = 0;
+        for (int i = 0; i < count; i++) {
+            x[i] = (longitudes[i] - longitude0) * longitudeScale;
+            y[i] = (latitudes[i] - latitude0) * latitudeScale;
+            if (times[i] < times[first]) first = i;
+        }
+
+        double px, py, t0;
+        if (count == 1) {
+            px = x[0];
+            py = y[0];
+            t0 = times[0];
+            error = 0;
+        } else if (count == 2) {
+            final int second = 1 - first;
+            final double dx = x[second] - x[first], dy = y[second] - y[first];
+            final double baseline = Math.sqrt(dx * dx + dy * dy);
+            final double fromFirst = baseline > 0
+                    ? Math.max(0, Math.min(baseline, (baseline - speed * (times[second] - times[first])) / 2))
+                    : 0;
+            final double ratio = baseline > 0 ? fromFirst / baseline : 0;
+            px = x[first] + dx * ratio;
+            py = y[first] + dy * ratio;
+            t0 = times[first] - fromFirst / speed;
+            error = 0;
+        } else {
+            // Start at the centroid, emitted when it would have reached the first sensor
+            px = 0;
+            py = 0;
+            for (int i = 0; i < count; i++) {
+                px += x[i];
+                py += y[i];
+            }
+            px /= count;
+            py /= count;
+            t0 = times[first] - Math.hypot(px - x[first], py - y[first]) / speed;
+
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                // Normal equations of the residuals r = |p - s| - c * (t - t0), with t0 scaled to meters
+                double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0, b0 = 0, b1 = 0, b2 = 0;
+                for (int i = 0; i < count; i++) {
+                    final double dx = px - x[i], dy = py - y[i];
+                    final double distance = Math.max(1e-9, Math.sqrt(dx * dx + dy * dy));
+                    final double r = distance - speed * (times[i] - t0);
+                    final double jx = dx / distance, jy = dy / distance;
+                    a00 += jx * jx;
+                    a01 += jx * jy;
+                    a02 += jx;
+                    a11 += jy * jy;
+                    a12 += jy;
+                    a22 += 1;
+                    b0 -= jx * r;
+                    b1 -= jy * r;
+                    b2 -= r;
+                }
+                final double damping = DAMPING * (a00 + a11 + a22);
+                a00 += damping;
+                a11 += damping;
+                a22 += damping;
+
+                final double det = a00 * (a11 * a22 - a12 * a12) - a01 * (a01 * a22 - a12 * a02) + a02 * (a01 * a12 - a11 * a02);
+                if (Math.abs(det) < 1e-12) break;
+                final double sx = (b0 * (a11 * a22 - a12 * a12) - a01 * (b1 * a22 - a12 * b2) + a02 * (b1 * a12 - a11 * b2)) / det;
+                final double sy = (a00 * (b1 * a22 - a12 * b2) - b0 * (a01 * a22 - a12 * a02) + a02 * (a01 * b2 - b1 * a02)) / det;
+                final double st = (a00 * (a11 * b2 - b1 * a12) - a01 * (a01 * b2 - b1 * a02) + b0 * (a01 * a12 - a11 * a02)) / det;
+
+                px += sx;
+                py += sy;
+                t0 += st / speed;
+                if (sx * sx + sy * sy + st * st < CONVERGENCE * CONVERGENCE) break;
+            }
+
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                final double r = Math.hypot(px - x[i], py - y[i]) - speed * (times[i] - t0);
+                sum += r * r;
+            }
+            error = Math.sqrt(sum / count);
+        }
+
+        this.latitude = latitude0 + py / latitudeScale;
+        this.longitude = longitude0 + px / longitudeScale;
+        this.time = t0;
+    }
+
+    /**
+     * @return the latitude of the last solution.
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return the longitude of the last solution.
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return the emission time of the last solution, in seconds.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the root mean square of the residuals of the last solution, in meters.
+     */
+    public double getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.hugovs.gls.receiver.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A lock-free handoff of the latest value from a single writer to a single reader, over three preallocated values.
+ *
+ * The writer fills the value of {@link #back()} and {@link #publish()}es it; the reader takes the latest published
+ * value with {@link #front()}. Neither side ever waits nor allocates: the writer and the reader own one value each
+ * and swap it with the middle one, so the reader never sees a value being written and the writer never overwrites
+ * the value being read. Values published while the reader is busy replace each other.
+ *
+ * @param <T> the type of the values.
+ * @author Hugo Sartori
+ */
+public class TripleBuffer<T> {
+
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] values = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    /**
+     * Creates an {@link TripleBuffer} instance.
+     *
+     * @param factory: the factory of the three values.
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < values.length; i++)
+            values[i] = factory.get();
+    }
+
+    /**
+     * @return the value to be filled by the writer.
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) values[back];
+    }
+
+    /**
+     * Publish the value filled by the writer, taking another one to be filled next.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Take the latest published value for the reader, keeping the current one if nothing was published since.
+     *
+     * @return the value to be read, owned by the reader until the next call.
+     */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & INDEX;
+        return (T) values[front];
+    }
+
+    /**
+     * @return {@code true} if a value was published since the reader took the last one.
+     */
+    public boolean isFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+}